@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2011 Yoni Samlan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.ysamlan.horizontalpager;
+
+import android.os.Parcelable;
+import android.test.AndroidTestCase;
+import android.util.SparseArray;
+import android.view.View;
+import android.view.View.MeasureSpec;
+import android.view.ViewGroup;
+
+/**
+ * Checks that restoring a saved {@link HorizontalPager} costs no more than its first measure and
+ * layout pass, and that the restored pager shows the saved page right away instead of snapping to
+ * it from page 0. Needs a device or an emulator: build it into a test package for this project and
+ * run it with {@code android.test.InstrumentationTestRunner}, e.g.
+ *
+ * <pre>
+ * adb shell am instrument -w \
+ *     -e class com.github.ysamlan.horizontalpager.HorizontalPagerRestoreTest \
+ *     com.github.ysamlan.horizontalpager.tests/android.test.InstrumentationTestRunner
+ * </pre>
+ */
+public class HorizontalPagerRestoreTest extends AndroidTestCase {
+    private static final int PAGER_ID = 1;
+    private static final int PAGE_COUNT = 5;
+    private static final int WIDTH = 480;
+    private static final int HEIGHT = 800;
+
+    private HorizontalPager createPager(final PassCounter passCounter) {
+        final HorizontalPager pager = new HorizontalPager(getContext());
+        pager.setId(PAGER_ID);
+        pager.setAdapter(new PageAdapter() {
+            @Override
+            public int getCount() {
+                return PAGE_COUNT;
+            }
+
+            @Override
+            public View createPage(final ViewGroup parent, final int viewType) {
+                return new View(parent.getContext());
+            }
+
+            @Override
+            public void bindPage(final View page, final int position) {
+            }
+        });
+        pager.setMetricsListener(passCounter, 0);
+        return pager;
+    }
+
+    private static void measureAndLayout(final HorizontalPager pager) {
+        pager.measure(MeasureSpec.makeMeasureSpec(WIDTH, MeasureSpec.EXACTLY),
+                MeasureSpec.makeMeasureSpec(HEIGHT, MeasureSpec.EXACTLY));
+        pager.layout(0, 0, WIDTH, HEIGHT);
+    }
+
+    private SparseArray<Parcelable> saveAt(final int screen, final boolean animate) {
+        final HorizontalPager pager = createPager(new PassCounter());
+        measureAndLayout(pager);
+        pager.setCurrentScreen(screen, animate);
+        final SparseArray<Parcelable> container = new SparseArray<Parcelable>();
+        pager.saveHierarchyState(container);
+        return container;
+    }
+
+    public void testRestoreTakesOneMeasureAndLayoutPass() {
+        final SparseArray<Parcelable> container = saveAt(3, false);
+
+        final PassCounter passCounter = new PassCounter();
+        final HorizontalPager pager = createPager(passCounter);
+        pager.restoreHierarchyState(container);
+        measureAndLayout(pager);
+
+        assertEquals(1, passCounter.measurePasses);
+        assertEquals(1, passCounter.layoutPasses);
+        assertFalse(pager.isLayoutRequested());
+        assertEquals(3, pager.getCurrentScreen());
+        assertEquals(3 * WIDTH, pager.getScrollX());
+    }
+
+    public void testRestoreCostsNoMoreThanAFreshPager() {
+        final PassCounter freshCounter = new PassCounter();
+        measureAndLayout(createPager(freshCounter));
+
+        final SparseArray<Parcelable> container = saveAt(2, false);
+        final PassCounter restoredCounter = new PassCounter();
+        final HorizontalPager pager = createPager(restoredCounter);
+        pager.restoreHierarchyState(container);
+        measureAndLayout(pager);
+
+        assertEquals(freshCounter.measurePasses, restoredCounter.measurePasses);
+        assertEquals(freshCounter.layoutPasses, restoredCounter.layoutPasses);
+    }
+
+    public void testRunningSnapIsRestoredAtItsTarget() {
+        final SparseArray<Parcelable> container = saveAt(4, true);
+
+        final PassCounter passCounter = new PassCounter();
+        final HorizontalPager pager = createPager(passCounter);
+        pager.restoreHierarchyState(container);
+        measureAndLayout(pager);
+
+        assertEquals(1, passCounter.measurePasses);
+        assertEquals(1, passCounter.layoutPasses);
+        assertEquals(4, pager.getCurrentScreen());
+        assertEquals(4 * WIDTH, pager.getScrollX());
+    }
+
+    /**
+     * Counts measure and layout passes, ignoring all other measurements.
+     */
+    private static final class PassCounter implements HorizontalPager.MetricsListener {
+        int measurePasses;
+        int layoutPasses;
+
+        @Override
+        public void onAnimationFrame(final long frameIntervalNanos, final boolean overBudget) {
+        }
+
+        @Override
+        public void onAnimationFinished(final int frameCount, final int framesOverBudget) {
+        }
+
+        @Override
+        public void onReleaseToScreenSwitch(final int screen, final long latencyNanos) {
+        }
+
+        @Override
+        public void onMeasurePass(final long durationNanos) {
+            measurePasses++;
+        }
+
+        @Override
+        public void onLayoutPass(final long durationNanos) {
+            layoutPasses++;
+        }
+
+        @Override
+        public void onPageLayerReleased(final int page, final long liveNanos) {
+        }
+
+        @Override
+        public void onTouchAxisDecided(final boolean horizontal, final int events,
+                final int samples) {
+        }
+
+        @Override
+        public void onOverdrawSaved(final int pixels) {
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2011 Yoni Samlan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.ysamlan.horizontalpager.bench;
+
+import java.util.Random;
+
+import com.github.ysamlan.horizontalpager.PageOffsetIndex;
+import com.github.ysamlan.horizontalpager.PagerPhysics;
+import com.github.ysamlan.horizontalpager.TouchAxisArbiter;
+
+/**
+ * Checks that the pure-Java work the pager does for every ACTION_MOVE allocates nothing once warmed
+ * up: drag clamping in {@link PagerPhysics}, axis arbitration in {@link TouchAxisArbiter} and page
+ * lookups in {@link PageOffsetIndex}. Allocated bytes come from HotSpot's per-thread allocation
+ * counters, as in {@link MicroBenchmark}. Exits with status 1 if any of them allocates. From the
+ * project root:
+ *
+ * <pre>
+ * javac -d bin-bench src/com/github/ysamlan/horizontalpager/PagerPhysics.java \
+ *     src/com/github/ysamlan/horizontalpager/PageOffsetIndex.java \
+ *     src/com/github/ysamlan/horizontalpager/GestureTrace.java \
+ *     src/com/github/ysamlan/horizontalpager/TouchAxisArbiter.java \
+ *     bench/com/github/ysamlan/horizontalpager/bench/*.java
+ * java -cp bin-bench com.github.ysamlan.horizontalpager.bench.AllocationCheck
+ * </pre>
+ */
+public final class AllocationCheck {
+    private static final int PAGE_WIDTH = 480;
+    private static final int PAGE_COUNT = 1000;
+    private static final int TOUCH_SLOP = 16;
+    private static final int EVENTS_PER_ROUND = 1 << 16;
+    // MOVE events per arbitrated gesture, and historical samples per MOVE event
+    private static final int EVENTS_PER_GESTURE = 8;
+    private static final int SAMPLES_PER_EVENT = 3;
+
+    private AllocationCheck() {
+    }
+
+    public static void main(final String[] args) {
+        final Random random = new Random(PAGE_COUNT);
+        final int[] scrollX = new int[EVENTS_PER_ROUND];
+        final int[] deltaX = new int[EVENTS_PER_ROUND];
+        final int[] deltaY = new int[EVENTS_PER_ROUND];
+        final int[] widths = new int[PAGE_COUNT];
+        for (int i = 0; i < EVENTS_PER_ROUND; i++) {
+            scrollX[i] = random.nextInt(PAGE_COUNT * PAGE_WIDTH + PAGE_WIDTH) - PAGE_WIDTH / 2;
+            deltaX[i] = random.nextInt(81) - 40;
+            deltaY[i] = random.nextInt(81) - 40;
+        }
+        for (int i = 0; i < PAGE_COUNT; i++) {
+            widths[i] = PAGE_WIDTH * 3 / 5 + random.nextInt(PAGE_WIDTH * 2 / 5 + 1);
+        }
+        final PageOffsetIndex pages = new PageOffsetIndex();
+        pages.setWidths(widths, PAGE_COUNT);
+        final TouchAxisArbiter arbiter = new TouchAxisArbiter(TOUCH_SLOP,
+                TouchAxisArbiter.DEFAULT_LOCK_ANGLE_DEGREES,
+                TouchAxisArbiter.DEFAULT_DECISION_SAMPLES);
+
+        final MicroBenchmark[] checks = {
+            new MicroBenchmark("clampDragDelta", EVENTS_PER_ROUND) {
+                @Override
+                long runRound() {
+                    long sum = 0;
+                    for (int i = 0; i < EVENTS_PER_ROUND; i++) {
+                        sum += PagerPhysics.clampDragDelta(scrollX[i], deltaX[i], PAGE_WIDTH,
+                                PAGE_COUNT);
+                    }
+                    return sum;
+                }
+            },
+            new MicroBenchmark("clampDragDelta indexed", EVENTS_PER_ROUND) {
+                @Override
+                long runRound() {
+                    long sum = 0;
+                    for (int i = 0; i < EVENTS_PER_ROUND; i++) {
+                        sum += PagerPhysics.clampDragDelta(scrollX[i], deltaX[i], pages);
+                    }
+                    return sum;
+                }
+            },
+            new MicroBenchmark("TouchAxisArbiter", EVENTS_PER_ROUND) {
+                @Override
+                long runRound() {
+                    long sum = 0;
+                    float x = 0;
+                    float y = 0;
+                    long time = 0;
+                    for (int i = 0; i < EVENTS_PER_ROUND; i++) {
+                        if (i % EVENTS_PER_GESTURE == 0) {
+                            arbiter.start(x, y, time);
+                        } else if (arbiter.getAxis() == TouchAxisArbiter.AXIS_VERTICAL) {
+                            arbiter.restart(x, y, time);
+                        }
+                        for (int sample = 0; sample < SAMPLES_PER_EVENT; sample++) {
+                            x += deltaX[i] / (float) SAMPLES_PER_EVENT;
+                            y += deltaY[i] / (float) SAMPLES_PER_EVENT;
+                            time += 4;
+                            arbiter.addSample(x, y, time);
+                        }
+                        time += 4;
+                        sum += arbiter.addEvent(x, y, time) + arbiter.getSampleCount();
+                    }
+                    return sum;
+                }
+            },
+            new MicroBenchmark("PageOffsetIndex.getPageAt", EVENTS_PER_ROUND) {
+                @Override
+                long runRound() {
+                    long sum = 0;
+                    for (int i = 0; i < EVENTS_PER_ROUND; i++) {
+                        sum += pages.getPageAt(scrollX[i]);
+                    }
+                    return sum;
+                }
+            },
+        };
+
+        int failures = 0;
+        for (final MicroBenchmark check : checks) {
+            final long bytes = check.measureAllocatedBytes();
+            if (bytes < 0) {
+                System.out.println("Allocation counters aren't supported by this JVM");
+                return;
+            }
+            System.out.println(String.format("%-48s %10d B/round", check.getName(), bytes));
+            if (bytes > 0) {
+                failures++;
+            }
+        }
+        System.out.println(String.format("%d checks, %d failures", checks.length, failures));
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+}
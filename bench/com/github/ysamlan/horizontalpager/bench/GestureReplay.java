@@ -0,0 +1,428 @@
+/*
+ * Copyright (C) 2011 Yoni Samlan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.ysamlan.horizontalpager.bench;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import com.github.ysamlan.horizontalpager.GestureTrace;
+import com.github.ysamlan.horizontalpager.PageOffsetIndex;
+import com.github.ysamlan.horizontalpager.PagerPhysics;
+import com.github.ysamlan.horizontalpager.TouchAxisArbiter;
+
+/**
+ * Replays gesture traces recorded with {@code HorizontalPager.startGestureTrace} at full speed on
+ * a plain JVM, as a behavior and performance regression suite. The pager's touch handling is
+ * modeled on top of {@link PagerPhysics} and {@link TouchAxisArbiter}: axis arbitration between
+ * intercepting and passing on a drag, drag clamping, release targets from the recorded release
+ * velocity (the one thing that needs a real VelocityTracker) and settle planning. Every intercept
+ * decision, scroll position, release target and screen switch is checked against the trace; per
+ * gesture, the recorded settle latency and frame count are printed next to the replayed ones, and
+ * per trace the axis decision latency. Exits with status 1 if anything differs. Pagers nested in
+ * the recorded pager's pages aren't modeled; traces of gestures they took show up as intercept
+ * differences. From the project root:
+ *
+ * <pre>
+ * javac -d bin-bench src/com/github/ysamlan/horizontalpager/PagerPhysics.java \
+ *     src/com/github/ysamlan/horizontalpager/PageOffsetIndex.java \
+ *     src/com/github/ysamlan/horizontalpager/GestureTrace.java \
+ *     src/com/github/ysamlan/horizontalpager/TouchAxisArbiter.java \
+ *     bench/com/github/ysamlan/horizontalpager/bench/*.java
+ * java -cp bin-bench com.github.ysamlan.horizontalpager.bench.GestureReplay \
+ *     [--settle-tolerance-millis N] trace...
+ * </pre>
+ *
+ * With {@code --settle-tolerance-millis}, a gesture whose replayed settle animation takes more
+ * than N milliseconds longer than the recorded one also fails.
+ */
+public final class GestureReplay {
+    // MotionEvent actions
+    private static final int ACTION_DOWN = 0;
+    private static final int ACTION_UP = 1;
+    private static final int ACTION_MOVE = 2;
+    private static final int ACTION_CANCEL = 3;
+
+    private static final int TOUCH_STATE_REST = 0;
+    private static final int TOUCH_STATE_HORIZONTAL_SCROLLING = 1;
+    private static final int TOUCH_STATE_VERTICAL_SCROLLING = -1;
+
+    // Frame interval the replayed frame counts assume, 60 frames per second
+    private static final float FRAME_MILLIS = 1000f / 60;
+
+    private GestureReplay() {
+    }
+
+    public static void main(final String[] args) throws IOException {
+        int settleToleranceMillis = -1;
+        int traces = 0;
+        int gestures = 0;
+        int failures = 0;
+        for (int i = 0; i < args.length; i++) {
+            if ("--settle-tolerance-millis".equals(args[i]) && i + 1 < args.length) {
+                settleToleranceMillis = Integer.parseInt(args[++i]);
+                continue;
+            }
+            final GestureTrace.Reader reader =
+                    new GestureTrace.Reader(new FileInputStream(args[i]));
+            try {
+                final Replay replay =
+                        new Replay(args[i], reader.getHeader(), settleToleranceMillis);
+                replay.run(reader);
+                traces++;
+                gestures += replay.mGestures;
+                failures += replay.mFailures;
+            } finally {
+                reader.close();
+            }
+        }
+
+        if (traces == 0) {
+            System.err.println("Usage: GestureReplay [--settle-tolerance-millis N] trace...");
+            System.exit(2);
+        }
+        System.out.println(String.format("%d traces, %d gestures, %d failures", traces, gestures,
+                failures));
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * The modeled pager state while one trace is replayed.
+     */
+    private static final class Replay {
+        private final String mName;
+        private final GestureTrace.Header mHeader;
+        private final PagerPhysics mPhysics;
+        private final PageOffsetIndex mPages;
+        private final PagerPhysics.SnapPlan mPlan = new PagerPhysics.SnapPlan();
+        private final TouchAxisArbiter mArbiter;
+        private final int mSettleToleranceMillis;
+
+        private int mTouchState = TOUCH_STATE_REST;
+        private float mLastMotionX;
+        // Axis decisions and the MOVE events they took, summed
+        private int mAxisDecisions;
+        private int mAxisDecisionEvents;
+        private int mScrollX;
+        private int mCurrentScreen;
+        // The modeled snap animation, ending at mAnimationEndMillis
+        private boolean mAnimating;
+        private long mAnimationEndMillis;
+        // Whether the trace shows animation frames not yet followed by a switch
+        private boolean mRecordedAnimating;
+
+        // The gesture whose settle is being measured
+        private boolean mSettling;
+        private boolean mReleased;
+        private int mTargetPage;
+        private int mVelocityX;
+        private long mReleaseMillis;
+        private int mReplayedSettleMillis;
+        private int mRecordedFrames;
+
+        int mGestures;
+        int mFailures;
+
+        Replay(final String name, final GestureTrace.Header header,
+                final int settleToleranceMillis) {
+            mName = name;
+            mHeader = header;
+            mPhysics = header.createPhysics();
+            mPages = header.createPageOffsets();
+            mArbiter = header.createAxisArbiter();
+            mSettleToleranceMillis = settleToleranceMillis;
+            mScrollX = header.scrollX;
+            mCurrentScreen = header.currentScreen;
+        }
+
+        void run(final GestureTrace.Reader reader) throws IOException {
+            for (int record = reader.next(); record != GestureTrace.RECORD_END;
+                    record = reader.next()) {
+                switch (record) {
+                    case GestureTrace.RECORD_EVENT:
+                        if (reader.getRoute() == GestureTrace.ROUTE_INTERCEPT) {
+                            final boolean intercept = intercept(reader.getAction(),
+                                    reader.getX(), reader.getY(), reader.getTimeMillis());
+                            if (intercept != reader.isHandled()) {
+                                fail(reader, "intercept " + intercept + ", recorded "
+                                        + reader.isHandled());
+                            }
+                        } else {
+                            touch(reader);
+                        }
+                        break;
+                    case GestureTrace.RECORD_RELEASE:
+                        release(reader);
+                        break;
+                    case GestureTrace.RECORD_FRAME:
+                        mRecordedAnimating = true;
+                        if (mSettling) {
+                            mRecordedFrames++;
+                        }
+                        break;
+                    case GestureTrace.RECORD_SWITCH:
+                        settle(reader);
+                        break;
+                    case GestureTrace.RECORD_SAMPLE:
+                        mArbiter.addSample(reader.getX(), reader.getY(), reader.getTimeMillis());
+                        break;
+                    default:
+                        break;
+                }
+            }
+
+            if (mAxisDecisions > 0) {
+                System.out.println(String.format("%s: %d axis decisions, %.1f events on average",
+                        mName, mAxisDecisions, (float) mAxisDecisionEvents / mAxisDecisions));
+            }
+        }
+
+        /**
+         * Models onInterceptTouchEvent.
+         */
+        private boolean intercept(final int action, final float x, final float y,
+                final long timeMillis) {
+            switch (action) {
+                case ACTION_MOVE:
+                    if (mTouchState == TOUCH_STATE_HORIZONTAL_SCROLLING) {
+                        return true;
+                    }
+                    return arbitrate(x, y, timeMillis);
+                case ACTION_CANCEL:
+                case ACTION_UP:
+                    mTouchState = TOUCH_STATE_REST;
+                    return false;
+                case ACTION_DOWN:
+                    mArbiter.start(x, y, timeMillis);
+                    mLastMotionX = x;
+                    mTouchState = TOUCH_STATE_REST;
+                    if (isAnimating(timeMillis)) {
+                        mTouchState = TOUCH_STATE_HORIZONTAL_SCROLLING;
+                        return true;
+                    }
+                    return false;
+                default:
+                    return false;
+            }
+        }
+
+        /**
+         * Models the axis arbitration of a MOVE event whose historical samples were added.
+         */
+        private boolean arbitrate(final float x, final float y, final long timeMillis) {
+            final int axis = mArbiter.addEvent(x, y, timeMillis);
+            if (axis == TouchAxisArbiter.AXIS_UNDECIDED) {
+                return false;
+            }
+            mAxisDecisions++;
+            mAxisDecisionEvents += mArbiter.getDecisionEvents();
+
+            final int direction = mArbiter.getDeltaX() > 0 ? -1 : 1;
+            if (axis == TouchAxisArbiter.AXIS_HORIZONTAL && (mHeader.circular
+                    || PagerPhysics.clampDragDelta(mScrollX, direction, mPages) != 0)) {
+                mTouchState = TOUCH_STATE_HORIZONTAL_SCROLLING;
+                mLastMotionX = x;
+                return true;
+            }
+            mTouchState = TOUCH_STATE_VERTICAL_SCROLLING;
+            mArbiter.restart(x, y, timeMillis);
+            return false;
+        }
+
+        private boolean isAnimating(final long timeMillis) {
+            return mRecordedAnimating || mAnimating && timeMillis < mAnimationEndMillis;
+        }
+
+        /**
+         * Models onTouchEvent, apart from the release, which {@link #release} models.
+         */
+        private void touch(final GestureTrace.Reader reader) {
+            final float x = reader.getX();
+            switch (reader.getAction()) {
+                case ACTION_DOWN:
+                    mArbiter.start(x, reader.getY(), reader.getTimeMillis());
+                    mLastMotionX = x;
+                    if (isAnimating(reader.getTimeMillis())) {
+                        // Catches the pages mid-animation; where exactly depends on frame timing
+                        mTouchState = TOUCH_STATE_HORIZONTAL_SCROLLING;
+                        mScrollX = reader.getScrollX();
+                    } else {
+                        mTouchState = TOUCH_STATE_REST;
+                    }
+                    mAnimating = false;
+                    break;
+                case ACTION_MOVE:
+                    if (mTouchState != TOUCH_STATE_HORIZONTAL_SCROLLING) {
+                        arbitrate(x, reader.getY(), reader.getTimeMillis());
+                    }
+                    if (mTouchState == TOUCH_STATE_HORIZONTAL_SCROLLING) {
+                        final int deltaX = (int) (mLastMotionX - x);
+                        mLastMotionX = x;
+                        mScrollX += mHeader.circular ? deltaX
+                                : PagerPhysics.clampDragDelta(mScrollX, deltaX, mPages);
+                    }
+                    break;
+                case ACTION_UP:
+                    if (mReleased) {
+                        mReleased = false;
+                        mReleaseMillis = reader.getTimeMillis();
+                        startAnimation(reader.getTimeMillis());
+                    } else if (mTouchState == TOUCH_STATE_HORIZONTAL_SCROLLING) {
+                        fail(reader, "release expected");
+                    }
+                    mTouchState = TOUCH_STATE_REST;
+                    break;
+                case ACTION_CANCEL:
+                    if (mTouchState == TOUCH_STATE_HORIZONTAL_SCROLLING) {
+                        final int page = mHeader.circular
+                                ? mPhysics.computeCircularDestinationPage(mScrollX, mPages,
+                                        mCurrentScreen)
+                                : mPhysics.computeDestinationPage(mScrollX, mPages,
+                                        mCurrentScreen);
+                        if (mHeader.circular) {
+                            mPhysics.planCircularSnap(mScrollX, page, mPages, -1, mPlan);
+                        } else {
+                            mPhysics.planSnap(mScrollX, page, mPages, -1, mPlan);
+                        }
+                        beginSettle(page, 0, reader.getTimeMillis());
+                        startAnimation(reader.getTimeMillis());
+                    }
+                    mTouchState = TOUCH_STATE_REST;
+                    break;
+                default:
+                    break;
+            }
+
+            if (mScrollX != reader.getScrollX()) {
+                fail(reader, "scrollX " + mScrollX + ", recorded " + reader.getScrollX());
+                mScrollX = reader.getScrollX();
+            }
+        }
+
+        /**
+         * Models the release of a horizontal drag with the recorded velocity.
+         */
+        private void release(final GestureTrace.Reader reader) {
+            if (mTouchState != TOUCH_STATE_HORIZONTAL_SCROLLING) {
+                fail(reader, "release without a horizontal drag");
+            }
+            if (mScrollX != reader.getScrollX()) {
+                fail(reader, "release scrollX " + mScrollX + ", recorded " + reader.getScrollX());
+                mScrollX = reader.getScrollX();
+            }
+
+            final int velocityX = reader.getVelocityX();
+            final int targetPage = mHeader.circular
+                    ? mPhysics.computeCircularFlingTargetPage(mScrollX, velocityX, mPages,
+                            mCurrentScreen, mHeader.maxFlingPages)
+                    : mPhysics.computeFlingTargetPage(mScrollX, velocityX, mPages,
+                            mCurrentScreen, mHeader.maxFlingPages);
+            if (targetPage != reader.getTargetPage()) {
+                fail(reader, "target page " + targetPage + ", recorded "
+                        + reader.getTargetPage());
+            }
+
+            jumpCloseTo(targetPage, velocityX);
+            if (mHeader.circular) {
+                mPhysics.planCircularRelease(mScrollX, targetPage, mPages, velocityX,
+                        mHeader.interpolatorInitialSlope, mPlan);
+            } else {
+                mPhysics.planRelease(mScrollX, targetPage, mPages, velocityX,
+                        mHeader.interpolatorInitialSlope, mPlan);
+            }
+            beginSettle(targetPage, velocityX, reader.getTimeMillis());
+            mReleased = true;
+        }
+
+        /**
+         * Models the pager skipping the pages a long fling passes.
+         */
+        private void jumpCloseTo(final int targetPage, final int velocityX) {
+            final int width = mHeader.viewportWidth;
+            if (width <= 0) {
+                return;
+            }
+            final int center = mScrollX + width / 2;
+            final int visiblePage = mHeader.circular ? mPages.getCircularPageAt(center)
+                    : mPages.getPageAt(Math.max(0, center));
+            final int jumpPage = mPhysics.computeFlingJumpPage(visiblePage, targetPage, velocityX,
+                    mHeader.maxFlingPages);
+            mScrollX += getPageOffset(jumpPage) - getPageOffset(visiblePage);
+        }
+
+        private void beginSettle(final int targetPage, final int velocityX, final long timeMillis) {
+            mGestures++;
+            mSettling = true;
+            mTargetPage = targetPage;
+            mVelocityX = velocityX;
+            mReleaseMillis = timeMillis;
+            mReplayedSettleMillis = mPlan.durationMillis;
+            mRecordedFrames = 0;
+        }
+
+        private void startAnimation(final long timeMillis) {
+            mAnimating = true;
+            mAnimationEndMillis = timeMillis + mPlan.durationMillis;
+        }
+
+        /**
+         * Checks a recorded screen switch against the modeled settle and reports the gesture.
+         */
+        private void settle(final GestureTrace.Reader reader) {
+            mRecordedAnimating = false;
+            mAnimating = false;
+            if (mSettling) {
+                mSettling = false;
+                final int expectedScreen = mHeader.circular
+                        ? PagerPhysics.wrapPage(mTargetPage, mPages.getPageCount())
+                        : PagerPhysics.clampPage(mTargetPage, mPages.getPageCount());
+                if (reader.getScreen() != expectedScreen) {
+                    fail(reader, "switched to " + reader.getScreen() + ", expected "
+                            + expectedScreen);
+                }
+                final long recordedSettleMillis = reader.getTimeMillis() - mReleaseMillis;
+                final int replayedFrames = (int) Math.ceil(mReplayedSettleMillis / FRAME_MILLIS);
+                System.out.println(String.format(
+                        "%s gesture %d: %d -> %d, v=%d px/s, settle %d ms (replayed %d ms),"
+                                + " frames %d (replayed %d)",
+                        mName, mGestures, mCurrentScreen, reader.getScreen(), mVelocityX,
+                        recordedSettleMillis, mReplayedSettleMillis, mRecordedFrames,
+                        replayedFrames));
+                if (mSettleToleranceMillis >= 0
+                        && mReplayedSettleMillis > recordedSettleMillis + mSettleToleranceMillis) {
+                    fail(reader, "settle " + mReplayedSettleMillis + " ms, recorded "
+                            + recordedSettleMillis + " ms");
+                }
+            }
+
+            // Circular paging moves back to the settled page's own round
+            mCurrentScreen = reader.getScreen();
+            mScrollX = getPageOffset(mCurrentScreen);
+        }
+
+        private int getPageOffset(final int page) {
+            return mHeader.circular ? mPages.getCircularPageOffset(page)
+                    : mPages.getPageOffset(page);
+        }
+
+        private void fail(final GestureTrace.Reader reader, final String message) {
+            mFailures++;
+            System.out.println(String.format("%s at %d ms: %s", mName, reader.getTimeMillis(),
+                    message));
+        }
+    }
+}
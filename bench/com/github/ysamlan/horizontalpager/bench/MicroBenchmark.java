@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2011 Yoni Samlan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.ysamlan.horizontalpager.bench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Minimal warmup/measure loop for the pure-Java parts of the pager. Reports nanoseconds and, on
+ * HotSpot JVMs, allocated bytes per operation, so that allocation regressions on the gesture path
+ * show up next to time regressions.
+ */
+abstract class MicroBenchmark {
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURE_ROUNDS = 10;
+
+    /** Results are folded into this so the JIT can't drop the benchmarked work. */
+    static volatile long sSink;
+
+    private final String mName;
+    private final int mOperationsPerRound;
+
+    MicroBenchmark(final String name, final int operationsPerRound) {
+        mName = name;
+        mOperationsPerRound = operationsPerRound;
+    }
+
+    /**
+     * Runs one round of {@code operationsPerRound} operations.
+     *
+     * @return A value derived from the results, folded into {@link #sSink}.
+     */
+    abstract long runRound();
+
+    /**
+     * Warms up, measures and prints one result line.
+     */
+    final void run() {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            sSink += runRound();
+        }
+
+        long bestNanos = Long.MAX_VALUE;
+        final long bytesBefore = getAllocatedBytes();
+        for (int i = 0; i < MEASURE_ROUNDS; i++) {
+            final long start = System.nanoTime();
+            sSink += runRound();
+            bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+        }
+        final long bytesAfter = getAllocatedBytes();
+
+        final double nanosPerOp = bestNanos / (double) mOperationsPerRound;
+        final String bytesPerOp = bytesBefore < 0 ? "n/a" : String.format("%.3f",
+                (bytesAfter - bytesBefore) / (double) (MEASURE_ROUNDS * mOperationsPerRound));
+        System.out.println(String.format("%-48s %10.2f ns/op %10s B/op", mName, nanosPerOp,
+                bytesPerOp));
+    }
+
+    /**
+     * Warms up and returns the bytes allocated by one more round, less what reading the counter
+     * allocates itself, or -1 if the JVM can't tell.
+     */
+    final long measureAllocatedBytes() {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            sSink += runRound();
+        }
+
+        final long counterBefore = getAllocatedBytes();
+        final long bytesBefore = getAllocatedBytes();
+        sSink += runRound();
+        final long bytesAfter = getAllocatedBytes();
+        if (bytesBefore < 0) {
+            return -1;
+        }
+        return Math.max(0, bytesAfter - bytesBefore - (bytesBefore - counterBefore));
+    }
+
+    /**
+     * Returns the name results are printed under.
+     */
+    final String getName() {
+        return mName;
+    }
+
+    /**
+     * Returns the bytes allocated by the current thread so far, or -1 if the JVM can't tell.
+     */
+    private static long getAllocatedBytes() {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2011 Yoni Samlan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.ysamlan.horizontalpager.bench;
+
+import java.util.Random;
+
+import com.github.ysamlan.horizontalpager.PageOffsetIndex;
+import com.github.ysamlan.horizontalpager.PagerPhysics;
+
+/**
+ * Regression baseline for the gesture hot path of {@link PagerPhysics}: drag clamping per MOVE
+ * event, release-target computation per ACTION_UP and snap planning, each swept over page counts
+ * from 5 to 10,000, plus the same decisions over pages of individual widths through
+ * {@link PageOffsetIndex}. Runs on a plain JVM; from the project root:
+ *
+ * <pre>
+ * javac -d bin-bench src/com/github/ysamlan/horizontalpager/PagerPhysics.java \
+ *     src/com/github/ysamlan/horizontalpager/PageOffsetIndex.java \
+ *     src/com/github/ysamlan/horizontalpager/GestureTrace.java \
+ *     src/com/github/ysamlan/horizontalpager/TouchAxisArbiter.java \
+ *     bench/com/github/ysamlan/horizontalpager/bench/*.java
+ * java -cp bin-bench com.github.ysamlan.horizontalpager.bench.PagerPhysicsBenchmark
+ * </pre>
+ */
+public final class PagerPhysicsBenchmark {
+    private static final int PAGE_WIDTH = 480;
+    private static final int SNAP_VELOCITY = 900;
+    private static final int[] PAGE_COUNTS = { 5, 100, 1000, 10000 };
+    private static final int EVENTS_PER_ROUND = 1 << 16;
+
+    private PagerPhysicsBenchmark() {
+    }
+
+    public static void main(final String[] args) {
+        final PagerPhysics physics = new PagerPhysics(SNAP_VELOCITY, 4, 500);
+        for (final int pageCount : PAGE_COUNTS) {
+            final Gestures gestures = new Gestures(pageCount);
+
+            new MicroBenchmark("clampDragDelta pages=" + pageCount, EVENTS_PER_ROUND) {
+                @Override
+                long runRound() {
+                    long sum = 0;
+                    for (int i = 0; i < EVENTS_PER_ROUND; i++) {
+                        sum += PagerPhysics.clampDragDelta(gestures.scrollX[i],
+                                gestures.deltaX[i], PAGE_WIDTH, pageCount);
+                    }
+                    return sum;
+                }
+            }.run();
+
+            new MicroBenchmark("computeReleaseTargetPage pages=" + pageCount, EVENTS_PER_ROUND) {
+                @Override
+                long runRound() {
+                    long sum = 0;
+                    for (int i = 0; i < EVENTS_PER_ROUND; i++) {
+                        sum += physics.computeReleaseTargetPage(gestures.scrollX[i],
+                                gestures.velocityX[i], PAGE_WIDTH, gestures.currentPage[i],
+                                pageCount);
+                    }
+                    return sum;
+                }
+            }.run();
+
+            final PagerPhysics.SnapPlan plan = new PagerPhysics.SnapPlan();
+            new MicroBenchmark("planSnap pages=" + pageCount, EVENTS_PER_ROUND) {
+                @Override
+                long runRound() {
+                    long sum = 0;
+                    for (int i = 0; i < EVENTS_PER_ROUND; i++) {
+                        physics.planSnap(gestures.scrollX[i], gestures.currentPage[i] + 1,
+                                PAGE_WIDTH, pageCount, -1, plan);
+                        sum += plan.durationMillis;
+                    }
+                    return sum;
+                }
+            }.run();
+
+            final PageOffsetIndex pages = gestures.createPeekingPages();
+            new MicroBenchmark("clampDragDelta indexed pages=" + pageCount, EVENTS_PER_ROUND) {
+                @Override
+                long runRound() {
+                    long sum = 0;
+                    for (int i = 0; i < EVENTS_PER_ROUND; i++) {
+                        sum += PagerPhysics.clampDragDelta(gestures.scrollX[i],
+                                gestures.deltaX[i], pages);
+                    }
+                    return sum;
+                }
+            }.run();
+
+            new MicroBenchmark("computeReleaseTargetPage indexed pages=" + pageCount,
+                    EVENTS_PER_ROUND) {
+                @Override
+                long runRound() {
+                    long sum = 0;
+                    for (int i = 0; i < EVENTS_PER_ROUND; i++) {
+                        sum += physics.computeReleaseTargetPage(gestures.scrollX[i],
+                                gestures.velocityX[i], pages, gestures.currentPage[i]);
+                    }
+                    return sum;
+                }
+            }.run();
+
+            new MicroBenchmark("getPageAt pages=" + pageCount, EVENTS_PER_ROUND) {
+                @Override
+                long runRound() {
+                    long sum = 0;
+                    for (int i = 0; i < EVENTS_PER_ROUND; i++) {
+                        sum += pages.getPageAt(gestures.scrollX[i]);
+                    }
+                    return sum;
+                }
+            }.run();
+        }
+    }
+
+    /**
+     * Pre-generated, reproducible gesture samples so the loops measure the physics, not the
+     * random number generator.
+     */
+    private static final class Gestures {
+        final int[] scrollX = new int[EVENTS_PER_ROUND];
+        final int[] deltaX = new int[EVENTS_PER_ROUND];
+        final int[] velocityX = new int[EVENTS_PER_ROUND];
+        final int[] currentPage = new int[EVENTS_PER_ROUND];
+        private final int mPageCount;
+
+        Gestures(final int pageCount) {
+            mPageCount = pageCount;
+            final Random random = new Random(pageCount);
+            for (int i = 0; i < EVENTS_PER_ROUND; i++) {
+                currentPage[i] = random.nextInt(pageCount);
+                scrollX[i] =
+                        currentPage[i] * PAGE_WIDTH + random.nextInt(PAGE_WIDTH) - PAGE_WIDTH / 2;
+                deltaX[i] = random.nextInt(81) - 40;
+                velocityX[i] = random.nextInt(4 * SNAP_VELOCITY) - 2 * SNAP_VELOCITY;
+            }
+        }
+
+        /**
+         * Returns pages between 60% and 100% of {@link #PAGE_WIDTH} wide, as in a carousel.
+         */
+        PageOffsetIndex createPeekingPages() {
+            final Random random = new Random(mPageCount);
+            final int[] widths = new int[mPageCount];
+            for (int i = 0; i < mPageCount; i++) {
+                widths[i] = PAGE_WIDTH * 3 / 5 + random.nextInt(PAGE_WIDTH * 2 / 5 + 1);
+            }
+            final PageOffsetIndex pages = new PageOffsetIndex();
+            pages.setWidths(widths, mPageCount);
+            return pages;
+        }
+    }
+}
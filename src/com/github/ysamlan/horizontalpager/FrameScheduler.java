@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2011 Yoni Samlan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.ysamlan.horizontalpager;
+
+import android.os.Build;
+import android.view.Choreographer;
+import android.view.View;
+
+/**
+ * Runs a callback once per display frame for {@link HorizontalPager}'s animations: on the vsync
+ * through {@link Choreographer} where available (API 16+), otherwise through a message posted on
+ * the view's handler with a typical frame delay.
+ */
+abstract class FrameScheduler {
+    // Fallback frame pacing where there is no Choreographer, about 60 frames per second
+    private static final long FALLBACK_FRAME_DELAY_MILLIS = 16;
+
+    /**
+     * Receives the frames.
+     */
+    interface Callback {
+        /**
+         * Called once per scheduled frame on the UI thread.
+         *
+         * @param frameTimeNanos The frame time, in the {@link System#nanoTime()} time base.
+         */
+        void onFrame(long frameTimeNanos);
+    }
+
+    final Callback mCallback;
+    boolean mScheduled;
+
+    private FrameScheduler(final Callback callback) {
+        mCallback = callback;
+    }
+
+    /**
+     * Creates the best scheduler for the running platform.
+     *
+     * @param view The view whose handler the fallback scheduler posts to.
+     * @param callback The frame callback.
+     * @return A new scheduler.
+     */
+    static FrameScheduler create(final View view, final Callback callback) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            return new ChoreographerFrameScheduler(callback);
+        }
+        return new HandlerFrameScheduler(view, callback);
+    }
+
+    /**
+     * Requests a callback on the next frame. Does nothing if one is already requested.
+     */
+    final void scheduleFrame() {
+        if (!mScheduled) {
+            mScheduled = true;
+            postFrame();
+        }
+    }
+
+    /**
+     * Withdraws a requested callback, if any.
+     */
+    final void cancelFrame() {
+        if (mScheduled) {
+            mScheduled = false;
+            removeFrame();
+        }
+    }
+
+    /**
+     * Delivers a frame to the callback.
+     *
+     * @param frameTimeNanos The frame time.
+     */
+    final void dispatchFrame(final long frameTimeNanos) {
+        mScheduled = false;
+        mCallback.onFrame(frameTimeNanos);
+    }
+
+    abstract void postFrame();
+
+    abstract void removeFrame();
+
+    /**
+     * Ticks on the display vsync.
+     */
+    private static final class ChoreographerFrameScheduler extends FrameScheduler
+            implements Choreographer.FrameCallback {
+        private final Choreographer mChoreographer = Choreographer.getInstance();
+
+        ChoreographerFrameScheduler(final Callback callback) {
+            super(callback);
+        }
+
+        @Override
+        void postFrame() {
+            mChoreographer.postFrameCallback(this);
+        }
+
+        @Override
+        void removeFrame() {
+            mChoreographer.removeFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(final long frameTimeNanos) {
+            dispatchFrame(frameTimeNanos);
+        }
+    }
+
+    /**
+     * Ticks from delayed messages on platforms without a Choreographer.
+     */
+    private static final class HandlerFrameScheduler extends FrameScheduler implements Runnable {
+        private final View mView;
+
+        HandlerFrameScheduler(final View view, final Callback callback) {
+            super(callback);
+            mView = view;
+        }
+
+        @Override
+        void postFrame() {
+            mView.postDelayed(this, FALLBACK_FRAME_DELAY_MILLIS);
+        }
+
+        @Override
+        void removeFrame() {
+            mView.removeCallbacks(this);
+        }
+
+        @Override
+        public void run() {
+            dispatchFrame(System.nanoTime());
+        }
+    }
+}
@@ -0,0 +1,476 @@
+/*
+ * Copyright (C) 2011 Yoni Samlan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.ysamlan.horizontalpager;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The binary format of the touch traces {@link HorizontalPager#startGestureTrace(OutputStream)}
+ * records: the pager's geometry and thresholds, then every touch event it received with its
+ * historical samples and the outcome, the release velocity and target of every fling, every snap
+ * animation frame and every screen switch. Free of any Android dependency, so traces can be
+ * replayed against {@link PagerPhysics} and {@link TouchAxisArbiter} on a plain JVM.
+ * <p>
+ * A trace is a header followed by records, each a one-byte type and its fields, written with
+ * {@link DataOutputStream}. Times are stored as milliseconds since the previous record. The
+ * geometry is that of the start of the trace; traces don't follow later adapter changes.
+ */
+public final class GestureTrace {
+    /** The event went to {@code onInterceptTouchEvent}. */
+    public static final int ROUTE_INTERCEPT = 0;
+    /** The event went to {@code onTouchEvent}. */
+    public static final int ROUTE_TOUCH = 1;
+
+    /** No more records. */
+    public static final int RECORD_END = 0;
+    /** A touch event and its outcome. */
+    public static final int RECORD_EVENT = 1;
+    /** The release of a horizontal drag: velocity, scroll position and target page. */
+    public static final int RECORD_RELEASE = 2;
+    /** A frame of a snap animation. */
+    public static final int RECORD_FRAME = 3;
+    /** A settled screen switch. */
+    public static final int RECORD_SWITCH = 4;
+    /** A historical touch sample of the following event. */
+    public static final int RECORD_SAMPLE = 5;
+
+    // "HPGT"
+    private static final int MAGIC = 0x48504754;
+    private static final int VERSION = 2;
+
+    private GestureTrace() {
+    }
+
+    /**
+     * The pager's state and configuration at the start of a trace.
+     */
+    public static final class Header {
+        /** The pager width in pixels. */
+        public int viewportWidth;
+        /** The width of every page in pixels; its length is the page count. */
+        public int[] pageWidths = new int[0];
+        /** Whether paging wraps around. */
+        public boolean circular;
+        /** The current screen. */
+        public int currentScreen;
+        /** The scroll position. */
+        public int scrollX;
+        /** The touch slop in pixels. */
+        public int touchSlop;
+        /** See {@link TouchAxisArbiter#getLockAngle()}. */
+        public float axisLockAngle = TouchAxisArbiter.DEFAULT_LOCK_ANGLE_DEGREES;
+        /** See {@link TouchAxisArbiter#getDecisionSamples()}. */
+        public int axisDecisionSamples = TouchAxisArbiter.DEFAULT_DECISION_SAMPLES;
+        /** See {@link PagerPhysics#getSnapVelocity()}. */
+        public int snapVelocity;
+        /** See {@link PagerPhysics#getFractionOfPageForSwipe()}. */
+        public int fractionOfPageForSwipe;
+        /** See {@link PagerPhysics#getFullSnapDurationMillis()}. */
+        public int fullSnapDurationMillis;
+        /** See {@link PagerPhysics#getFlingDeceleration()}. */
+        public float flingDeceleration;
+        /** See {@link HorizontalPager#getMaxFlingPages()}. */
+        public int maxFlingPages;
+        /** The initial slope of the snap interpolator, for velocity matching. */
+        public float interpolatorInitialSlope;
+
+        /**
+         * Creates the physics the pager used.
+         *
+         * @return A new engine with the recorded thresholds.
+         */
+        public PagerPhysics createPhysics() {
+            return new PagerPhysics(snapVelocity, fractionOfPageForSwipe, fullSnapDurationMillis,
+                    flingDeceleration);
+        }
+
+        /**
+         * Creates the touch axis arbitration the pager used.
+         *
+         * @return A new arbiter with the recorded slop and thresholds.
+         */
+        public TouchAxisArbiter createAxisArbiter() {
+            return new TouchAxisArbiter(touchSlop, axisLockAngle, axisDecisionSamples);
+        }
+
+        /**
+         * Creates the page geometry the pager used.
+         *
+         * @return A new index of the recorded page widths.
+         */
+        public PageOffsetIndex createPageOffsets() {
+            final PageOffsetIndex pages = new PageOffsetIndex();
+            pages.setWidths(pageWidths, pageWidths.length);
+            return pages;
+        }
+    }
+
+    /**
+     * Writes a trace.
+     */
+    public static final class Writer implements Closeable {
+        private final DataOutputStream mOut;
+        private long mLastTimeMillis;
+
+        /**
+         * Starts a trace by writing its header.
+         *
+         * @param out The stream to write to; closed by {@link #close()}.
+         * @param header The pager's state and configuration.
+         * @param startTimeMillis The time the trace starts, in the time base of the records.
+         * @throws IOException If writing fails.
+         */
+        public Writer(final OutputStream out, final Header header, final long startTimeMillis)
+                throws IOException {
+            mOut = new DataOutputStream(new BufferedOutputStream(out));
+            mLastTimeMillis = startTimeMillis;
+            mOut.writeInt(MAGIC);
+            mOut.writeShort(VERSION);
+            mOut.writeInt(header.viewportWidth);
+            mOut.writeInt(header.pageWidths.length);
+            for (int i = 0; i < header.pageWidths.length; i++) {
+                mOut.writeInt(header.pageWidths[i]);
+            }
+            mOut.writeBoolean(header.circular);
+            mOut.writeInt(header.currentScreen);
+            mOut.writeInt(header.scrollX);
+            mOut.writeInt(header.touchSlop);
+            mOut.writeFloat(header.axisLockAngle);
+            mOut.writeInt(header.axisDecisionSamples);
+            mOut.writeInt(header.snapVelocity);
+            mOut.writeInt(header.fractionOfPageForSwipe);
+            mOut.writeInt(header.fullSnapDurationMillis);
+            mOut.writeFloat(header.flingDeceleration);
+            mOut.writeInt(header.maxFlingPages);
+            mOut.writeFloat(header.interpolatorInitialSlope);
+        }
+
+        /**
+         * Records a touch event after the pager handled it.
+         *
+         * @param route {@link #ROUTE_INTERCEPT} or {@link #ROUTE_TOUCH}.
+         * @param action The event's action.
+         * @param timeMillis The event time.
+         * @param x The event's x coordinate.
+         * @param y The event's y coordinate.
+         * @param handled What the handler returned.
+         * @param scrollX The pager's scroll position after the event, including coalesced drags
+         *            not applied yet.
+         * @throws IOException If writing fails.
+         */
+        public void writeEvent(final int route, final int action, final long timeMillis,
+                final float x, final float y, final boolean handled, final int scrollX)
+                throws IOException {
+            mOut.writeByte(RECORD_EVENT);
+            mOut.writeByte(route);
+            mOut.writeShort(action);
+            writeTime(timeMillis);
+            mOut.writeFloat(x);
+            mOut.writeFloat(y);
+            mOut.writeBoolean(handled);
+            mOut.writeInt(scrollX);
+        }
+
+        /**
+         * Records a historical sample of a batched MOVE event, before the event itself.
+         *
+         * @param timeMillis The sample time.
+         * @param x The sample's x coordinate.
+         * @param y The sample's y coordinate.
+         * @throws IOException If writing fails.
+         */
+        public void writeSample(final long timeMillis, final float x, final float y)
+                throws IOException {
+            mOut.writeByte(RECORD_SAMPLE);
+            writeTime(timeMillis);
+            mOut.writeFloat(x);
+            mOut.writeFloat(y);
+        }
+
+        /**
+         * Records the release of a horizontal drag, before the ACTION_UP event itself.
+         *
+         * @param velocityX The release velocity.
+         * @param scrollX The scroll position at release.
+         * @param targetPage The page the pager settles on.
+         * @throws IOException If writing fails.
+         */
+        public void writeRelease(final int velocityX, final int scrollX, final int targetPage)
+                throws IOException {
+            mOut.writeByte(RECORD_RELEASE);
+            mOut.writeInt(velocityX);
+            mOut.writeInt(scrollX);
+            mOut.writeInt(targetPage);
+        }
+
+        /**
+         * Records a snap animation frame.
+         *
+         * @param timeMillis The frame time.
+         * @param scrollX The scroll position the frame shows.
+         * @throws IOException If writing fails.
+         */
+        public void writeFrame(final long timeMillis, final int scrollX) throws IOException {
+            mOut.writeByte(RECORD_FRAME);
+            writeTime(timeMillis);
+            mOut.writeInt(scrollX);
+        }
+
+        /**
+         * Records a settled screen switch.
+         *
+         * @param timeMillis The time the pager settled.
+         * @param screen The new screen.
+         * @throws IOException If writing fails.
+         */
+        public void writeSwitch(final long timeMillis, final int screen) throws IOException {
+            mOut.writeByte(RECORD_SWITCH);
+            writeTime(timeMillis);
+            mOut.writeInt(screen);
+        }
+
+        /**
+         * Ends the trace and closes the stream.
+         *
+         * @throws IOException If writing fails.
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                mOut.writeByte(RECORD_END);
+            } finally {
+                mOut.close();
+            }
+        }
+
+        private void writeTime(final long timeMillis) throws IOException {
+            mOut.writeInt((int) (timeMillis - mLastTimeMillis));
+            mLastTimeMillis = timeMillis;
+        }
+    }
+
+    /**
+     * Reads a trace one record at a time. The fields of the current record are available through
+     * the getters after {@link #next()}; fields a record doesn't have keep their last value.
+     */
+    public static final class Reader implements Closeable {
+        private final DataInputStream mIn;
+        private final Header mHeader = new Header();
+        private long mTimeMillis;
+        private int mRoute;
+        private int mAction;
+        private float mX;
+        private float mY;
+        private boolean mHandled;
+        private int mScrollX;
+        private int mVelocityX;
+        private int mTargetPage;
+        private int mScreen;
+
+        /**
+         * Starts reading a trace by reading its header.
+         *
+         * @param in The stream to read from; closed by {@link #close()}.
+         * @throws IOException If reading fails or the stream isn't a trace of this version.
+         */
+        public Reader(final InputStream in) throws IOException {
+            mIn = new DataInputStream(new BufferedInputStream(in));
+            if (mIn.readInt() != MAGIC) {
+                throw new IOException("Not a gesture trace");
+            }
+            final int version = mIn.readUnsignedShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported gesture trace version " + version);
+            }
+            mHeader.viewportWidth = mIn.readInt();
+            mHeader.pageWidths = new int[mIn.readInt()];
+            for (int i = 0; i < mHeader.pageWidths.length; i++) {
+                mHeader.pageWidths[i] = mIn.readInt();
+            }
+            mHeader.circular = mIn.readBoolean();
+            mHeader.currentScreen = mIn.readInt();
+            mHeader.scrollX = mIn.readInt();
+            mHeader.touchSlop = mIn.readInt();
+            mHeader.axisLockAngle = mIn.readFloat();
+            mHeader.axisDecisionSamples = mIn.readInt();
+            mHeader.snapVelocity = mIn.readInt();
+            mHeader.fractionOfPageForSwipe = mIn.readInt();
+            mHeader.fullSnapDurationMillis = mIn.readInt();
+            mHeader.flingDeceleration = mIn.readFloat();
+            mHeader.maxFlingPages = mIn.readInt();
+            mHeader.interpolatorInitialSlope = mIn.readFloat();
+            mScrollX = mHeader.scrollX;
+            mScreen = mHeader.currentScreen;
+        }
+
+        /**
+         * Returns the trace's header.
+         *
+         * @return The pager's state and configuration at the start of the trace.
+         */
+        public Header getHeader() {
+            return mHeader;
+        }
+
+        /**
+         * Reads the next record.
+         *
+         * @return Its type, one of the {@code RECORD_...} constants; {@link #RECORD_END} at the
+         *         end of the trace.
+         * @throws IOException If reading fails or the trace is corrupt.
+         */
+        public int next() throws IOException {
+            final int type = mIn.readUnsignedByte();
+            switch (type) {
+                case RECORD_END:
+                    break;
+                case RECORD_EVENT:
+                    mRoute = mIn.readUnsignedByte();
+                    mAction = mIn.readUnsignedShort();
+                    mTimeMillis += mIn.readInt();
+                    mX = mIn.readFloat();
+                    mY = mIn.readFloat();
+                    mHandled = mIn.readBoolean();
+                    mScrollX = mIn.readInt();
+                    break;
+                case RECORD_RELEASE:
+                    mVelocityX = mIn.readInt();
+                    mScrollX = mIn.readInt();
+                    mTargetPage = mIn.readInt();
+                    break;
+                case RECORD_FRAME:
+                    mTimeMillis += mIn.readInt();
+                    mScrollX = mIn.readInt();
+                    break;
+                case RECORD_SWITCH:
+                    mTimeMillis += mIn.readInt();
+                    mScreen = mIn.readInt();
+                    break;
+                case RECORD_SAMPLE:
+                    mTimeMillis += mIn.readInt();
+                    mX = mIn.readFloat();
+                    mY = mIn.readFloat();
+                    break;
+                default:
+                    throw new IOException("Unknown gesture trace record " + type);
+            }
+            return type;
+        }
+
+        /**
+         * Returns the time of the current record.
+         *
+         * @return Milliseconds since the start of the trace.
+         */
+        public long getTimeMillis() {
+            return mTimeMillis;
+        }
+
+        /**
+         * Returns where the current event went.
+         *
+         * @return {@link #ROUTE_INTERCEPT} or {@link #ROUTE_TOUCH}.
+         */
+        public int getRoute() {
+            return mRoute;
+        }
+
+        /**
+         * Returns the action of the current event.
+         *
+         * @return The {@code MotionEvent} action.
+         */
+        public int getAction() {
+            return mAction;
+        }
+
+        /**
+         * Returns the x coordinate of the current event or sample.
+         *
+         * @return The x coordinate.
+         */
+        public float getX() {
+            return mX;
+        }
+
+        /**
+         * Returns the y coordinate of the current event or sample.
+         *
+         * @return The y coordinate.
+         */
+        public float getY() {
+            return mY;
+        }
+
+        /**
+         * Returns what the handler of the current event returned.
+         *
+         * @return True if the event was intercepted (or, for {@link #ROUTE_TOUCH}, handled).
+         */
+        public boolean isHandled() {
+            return mHandled;
+        }
+
+        /**
+         * Returns the scroll position after the current event, at the current release or in the
+         * current frame.
+         *
+         * @return The scroll position.
+         */
+        public int getScrollX() {
+            return mScrollX;
+        }
+
+        /**
+         * Returns the velocity of the current release.
+         *
+         * @return The velocity in pixels per second.
+         */
+        public int getVelocityX() {
+            return mVelocityX;
+        }
+
+        /**
+         * Returns the page the current release settles on.
+         *
+         * @return The page; unwrapped in circular mode.
+         */
+        public int getTargetPage() {
+            return mTargetPage;
+        }
+
+        /**
+         * Returns the screen of the current switch.
+         *
+         * @return The screen index.
+         */
+        public int getScreen() {
+            return mScreen;
+        }
+
+        @Override
+        public void close() throws IOException {
+            mIn.close();
+        }
+    }
+}
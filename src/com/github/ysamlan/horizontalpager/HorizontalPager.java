@@ -20,16 +20,33 @@
  */
 package com.github.ysamlan.horizontalpager;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Executor;
+
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.database.DataSetObserver;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.util.DisplayMetrics;
-import android.view.Display;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
 import android.view.MotionEvent;
 import android.view.VelocityTracker;
 import android.view.View;
 import android.view.ViewConfiguration;
 import android.view.ViewGroup;
-import android.view.WindowManager;
+import android.view.ViewParent;
+import android.view.animation.DecelerateInterpolator;
+import android.view.animation.Interpolator;
 import android.widget.Scroller;
 
 /**
@@ -38,8 +55,16 @@ import android.widget.Scroller;
  * <p>
  * You can add and remove views using the normal methods {@link ViewGroup#addView(View)},
  * {@link ViewGroup#removeView(View)} etc. You may want to listen for updates by calling
- * {@link HorizontalPager#setOnScreenSwitchListener(OnScreenSwitchListener)} in order to perform
+ * {@link HorizontalPager#addOnScreenSwitchListener(OnScreenSwitchListener)} in order to perform
  * operations once a new screen has been selected.
+ * <p>
+ * For large page sets, supply the pages through a {@link PageAdapter} with
+ * {@link #setAdapter(PageAdapter)} instead; only the current page and
+ * {@link #setOffscreenPageLimit(int)} pages on either side of it are then attached, and pages that
+ * leave that window are recycled. Screen indices are always logical page positions. Adapter pages
+ * may be narrower than the pager ({@link PageAdapter#getPageWidth(int)}), in which case the
+ * following pages peek in next to the current one. With {@link #setCircular(boolean)}, paging
+ * wraps around from the last page to the first and back.
  *
  * Modifications from original version (ysamlan): Animate argument in setCurrentScreen and duration
  * in snapToScreen; onInterceptTouchEvent handling to support nesting a vertical Scrollview inside
@@ -55,38 +80,251 @@ import android.widget.Scroller;
  * @version 0.1.0
  */
 public final class HorizontalPager extends ViewGroup {
+    /**
+     * Page visibility reported to {@link PageLifecycleListener}: the page is out of view.
+     */
+    public static final int PAGE_HIDDEN = 0;
+    /**
+     * Page visibility reported to {@link PageLifecycleListener}: part of the page is in view.
+     */
+    public static final int PAGE_PARTIALLY_VISIBLE = 1;
+    /**
+     * Page visibility reported to {@link PageLifecycleListener}: all of the page is in view.
+     */
+    public static final int PAGE_VISIBLE = 2;
+
     /*
      * How long to animate between screens when programmatically setting with setCurrentScreen using
      * the animate parameter
      */
     private static final int ANIMATION_SCREEN_SET_DURATION_MILLIS = 500;
+    /*
+     * Animated setCurrentScreen calls to a screen more than this many pages away jump to the page
+     * next to it first and only animate the last page.
+     */
+    private static final int DEFAULT_LONG_JUMP_THRESHOLD_PAGES = 2;
+    // How many pages a fling may move by default; 1 is the classic next/previous page fling
+    private static final int DEFAULT_MAX_FLING_PAGES = 1;
+    // Hidden pages further than this from the current screen release resources on a mild trim
+    private static final int DEFAULT_TRIM_DISTANCE_PAGES = 1;
+    // How many pages to keep attached on either side of the visible ones when using an adapter
+    private static final int DEFAULT_OFFSCREEN_PAGE_LIMIT = 1;
     // What fraction (1/x) of the screen the user must swipe to indicate a page change
     private static final int FRACTION_OF_SCREEN_WIDTH_FOR_SWIPE = 4;
-    private static final int INVALID_SCREEN = -1;
+    /*
+     * Deceleration (in density-independent pixels per second squared) a fling is projected with to
+     * find how many pages it moves. Adjusted for the display density on init.
+     */
+    private static final int FLING_DECELERATION_DIP_PER_SECOND_SQUARED = 4000;
+    // Not a valid screen; page indices can be negative while circular paging wraps around
+    private static final int INVALID_SCREEN = Integer.MIN_VALUE;
+    /*
+     * How many pages beyond the visible ones to measure and lay out ahead of time, so a page is
+     * ready just before it scrolls into view.
+     */
+    private static final int MEASURE_PREFETCH_PAGES = 1;
     /*
      * Velocity of a swipe (in density-independent pixels per second) to force a swipe to the
-     * next/previous screen. Adjusted into mDensityAdjustedSnapVelocity on init.
+     * next/previous screen. Adjusted for the display density on init.
      */
     private static final int SNAP_VELOCITY_DIP_PER_SECOND = 600;
     // Argument to getVelocity for units to give pixels per second (1 = pixels per millisecond).
     private static final int VELOCITY_UNIT_PIXELS_PER_SECOND = 1000;
+    // Default frame budget for MetricsListener: one frame at 60 frames per second
+    private static final long DEFAULT_FRAME_BUDGET_NANOS = 16666667L;
+    // Input step used to estimate an interpolator's initial slope
+    private static final float INTERPOLATOR_SLOPE_STEP = 0.01f;
+
+    // Kinds of incremental adapter updates
+    private static final int UPDATE_INSERT = 0;
+    private static final int UPDATE_REMOVE = 1;
+    private static final int UPDATE_MOVE = 2;
+    private static final int UPDATE_CHANGE = 3;
 
     private static final int TOUCH_STATE_REST = 0;
     private static final int TOUCH_STATE_HORIZONTAL_SCROLLING = 1;
     private static final int TOUCH_STATE_VERTICAL_SCROLLING = -1;
     private int mCurrentScreen;
-    private int mDensityAdjustedSnapVelocity;
+    /*
+     * Whether paging wraps around. Scroll positions, mNextScreen and the page positions used for
+     * layout are then unwrapped (page n + k shows page k again, one round further on);
+     * mCurrentScreen is always a wrapped page and the scroll position is moved back into its
+     * round when a snap settles.
+     */
+    private boolean mCircular;
     private boolean mFirstLayout = true;
     private float mLastMotionX;
-    private float mLastMotionY;
+    // The listener set through setOnScreenSwitchListener; all listeners live in the dispatcher
     private OnScreenSwitchListener mOnScreenSwitchListener;
+    private final ScreenSwitchDispatcher mScreenSwitchDispatcher =
+            new ScreenSwitchDispatcher(this);
+    /*
+     * Scroll progress listeners, copied on write. A scroll change marks progress dirty and it is
+     * delivered once, from the next animation frame.
+     */
+    private OnPageScrollListener[] mPageScrollListeners = new OnPageScrollListener[0];
+    private boolean mPageScrollDirty;
+    /*
+     * Linked pagers, copied on write: followers mirror this pager's scroll position page by page
+     * from onScrollChanged, so within the same frame, and settle when it settles. A follower has
+     * a single driver and no touch handling of its own.
+     */
+    private HorizontalPager[] mFollowers = new HorizontalPager[0];
+    private HorizontalPager mDriver;
+    private boolean mInAnimationFrame;
+    // Snap and drag decisions, and the plan of the last snap started
+    private PagerPhysics mPhysics;
+    private final PagerPhysics.SnapPlan mSnapPlan = new PagerPhysics.SnapPlan();
+    /*
+     * Page widths and offsets, rebuilt when the pager width or the page count changes and updated
+     * page by page when an adapter page changes its width.
+     */
+    private final PageOffsetIndex mPageOffsets = new PageOffsetIndex();
+    private int mPageOffsetsWidth = -1;
+    private int[] mPageWidths = new int[0];
     private int mMaximumVelocity;
     private int mNextScreen = INVALID_SCREEN;
     private Scroller mScroller;
+    // Drives mScroller and coalesced drags once per display frame
+    private FrameScheduler mFrameScheduler;
+    private Interpolator mInterpolator;
+    // Slope of mInterpolator at 0, used to start a settle at the release velocity
+    private float mInterpolatorInitialSlope;
     private int mTouchSlop;
     private int mTouchState = TOUCH_STATE_REST;
+    // Decides between horizontal and vertical gestures while mTouchState isn't horizontal
+    private TouchAxisArbiter mAxisArbiter;
     private VelocityTracker mVelocityTracker;
+    /*
+     * With move coalescing on, drag deltas accumulate here and are applied with one scrollBy per
+     * frame from onAnimationFrame instead of one per MOVE event.
+     */
+    private boolean mCoalesceTouchMoves;
+    private int mPendingDragDeltaX;
     private int mLastSeenLayoutWidth = -1;
+    // Screen from onRestoreInstanceState, kept until there are pages to restore it on
+    private int mRestoredScreen = INVALID_SCREEN;
+    private float mRestoredScrollFraction;
+    private int mLastWidthMeasureSpec = -1;
+    private int mLastHeightMeasureSpec = -1;
+
+    private PageAdapter mAdapter;
+    // Attached adapter pages and their view types, keyed by page position
+    private final SparseArray<View> mActivePages = new SparseArray<View>();
+    private final SparseIntArray mActivePageTypes = new SparseIntArray();
+    private final PageRecycler mRecycler = new PageRecycler();
+    // Pages created and bound ahead of time from prefetched data, not attached yet
+    private final SparseArray<View> mPreparedPages = new SparseArray<View>();
+    private final SparseIntArray mPreparedPageTypes = new SparseIntArray();
+    private PagePrefetcher mPrefetcher;
+    private int mPrefetchDirection;
+    private int mOffscreenPageLimit = DEFAULT_OFFSCREEN_PAGE_LIMIT;
+    private int mLongJumpThreshold = DEFAULT_LONG_JUMP_THRESHOLD_PAGES;
+    private int mMaxFlingPages = DEFAULT_MAX_FLING_PAGES;
+    // The page window last populated; lets populatePages() skip work while it hasn't changed
+    private int mPopulatedFirstPage = INVALID_SCREEN;
+    private int mPopulatedLastPage = INVALID_SCREEN;
+    private int mPopulatedNextScreen = INVALID_SCREEN;
+    /*
+     * Incremental adapter updates waiting for the next frame: the page that stays where it is on
+     * screen and its distance from the scroll position, the current screen before the updates,
+     * and the first position whose pages may have moved.
+     */
+    private boolean mPageUpdatesPending;
+    private int mUpdateAnchorPage;
+    private int mUpdateAnchorOffset;
+    private int mUpdateOldScreen;
+    private int mUpdateLayoutFrom;
+    private boolean mInPopulate;
+    // Children dispatchDraw didn't draw because they were out of view, last frame and in total
+    private int mLastFrameSkippedPageDraws;
+    private long mTotalSkippedPageDraws;
+    /*
+     * Pages declared opaque through setPagesOpaque; otherwise View.isOpaque decides page by page.
+     * draw sets mBackgroundSkipped while it draws with the background's bounds emptied, saved in
+     * mBackgroundBounds, and dispatchDraw counts the background pixels that weren't painted.
+     */
+    private boolean mPagesOpaque;
+    private boolean mBackgroundSkipped;
+    private final Rect mBackgroundBounds = new Rect();
+    private int mLastFramePixelsSaved;
+    private long mTotalPixelsSaved;
+    // Bitmap snapshots of settled pages, drawn instead of the live pages while in motion
+    private PageSnapshotCache mSnapshotCache;
+    private Canvas mSnapshotCanvas;
+    private final Runnable mCaptureSnapshotsRunnable = new Runnable() {
+        @Override
+        public void run() {
+            captureSettledSnapshots();
+        }
+    };
+    private PageLifecycleListener mPageLifecycleListener;
+    // Visibility of the pages not hidden, by page
+    private final SparseIntArray mPageVisibilities = new SparseIntArray();
+    private int mTrimDistance = DEFAULT_TRIM_DISTANCE_PAGES;
+    private long mTotalReclaimedBytes;
+    private MemoryTrimCallbacks mMemoryTrimCallbacks;
+    private final MemoryTrimCallbacks.Callback mMemoryTrimCallback =
+            new MemoryTrimCallbacks.Callback() {
+                @Override
+                public void onTrimMemory(final int level) {
+                    trimMemory(level);
+                }
+            };
+    private boolean mPromotePagesToLayers;
+    private PageLayerPromoter mLayerPromoter;
+    private GestureTrace.Writer mGestureTrace;
+    private IOException mGestureTraceError;
+    // Frame and latency measurements, only taken while a MetricsListener is set
+    private MetricsListener mMetricsListener;
+    private long mFrameBudgetNanos = DEFAULT_FRAME_BUDGET_NANOS;
+    private long mLastAnimationFrameNanos;
+    private int mAnimationFrameCount;
+    private int mAnimationFramesOverBudget;
+    private long mReleaseNanos;
+    private final PagePrefetcher.Callback mPrefetchCallback = new PagePrefetcher.Callback() {
+        @Override
+        public boolean isPagePrepared(final int position) {
+            return mActivePages.get(position) != null || mPreparedPages.get(position) != null;
+        }
+
+        @Override
+        public void onPageDataReady(final int position, final Object data) {
+            preparePage(position, data);
+        }
+    };
+    private final PageAdapter.PageObserver mPageObserver = new PageAdapter.PageObserver() {
+        @Override
+        public void onPageWidthChanged(final int position) {
+            HorizontalPager.this.onPageWidthChanged(position);
+        }
+
+        @Override
+        public void onPagesInserted(final int positionStart, final int itemCount) {
+            onPagesUpdated(UPDATE_INSERT, positionStart, itemCount);
+        }
+
+        @Override
+        public void onPagesRemoved(final int positionStart, final int itemCount) {
+            onPagesUpdated(UPDATE_REMOVE, positionStart, itemCount);
+        }
+
+        @Override
+        public void onPageMoved(final int fromPosition, final int toPosition) {
+            onPagesUpdated(UPDATE_MOVE, fromPosition, toPosition);
+        }
+
+        @Override
+        public void onPagesChanged(final int positionStart, final int itemCount) {
+            onPagesUpdated(UPDATE_CHANGE, positionStart, itemCount);
+        }
+    };
+    private final DataSetObserver mDataSetObserver = new DataSetObserver() {
+        @Override
+        public void onChanged() {
+            onAdapterDataSetChanged();
+        }
+    };
 
     /**
      * Simple constructor to use when creating a view from code.
@@ -124,22 +362,32 @@ public final class HorizontalPager extends ViewGroup {
      * Sets up the scroller and touch/fling sensitivity parameters for the pager.
      */
     private void init() {
-        mScroller = new Scroller(getContext());
+        setInterpolator(null);
+        mFrameScheduler = FrameScheduler.create(this, new FrameScheduler.Callback() {
+            @Override
+            public void onFrame(final long frameTimeNanos) {
+                onAnimationFrame(frameTimeNanos);
+            }
+        });
 
         // Calculate the density-dependent snap velocity in pixels
-        DisplayMetrics displayMetrics = new DisplayMetrics();
-        ((WindowManager) getContext().getSystemService(Context.WINDOW_SERVICE)).getDefaultDisplay()
-                .getMetrics(displayMetrics);
-        mDensityAdjustedSnapVelocity =
+        final DisplayMetrics displayMetrics = getResources().getDisplayMetrics();
+        final int densityAdjustedSnapVelocity =
                 (int) (displayMetrics.density * SNAP_VELOCITY_DIP_PER_SECOND);
+        mPhysics = new PagerPhysics(densityAdjustedSnapVelocity,
+                FRACTION_OF_SCREEN_WIDTH_FOR_SWIPE, ANIMATION_SCREEN_SET_DURATION_MILLIS,
+                displayMetrics.density * FLING_DECELERATION_DIP_PER_SECOND_SQUARED);
 
         final ViewConfiguration configuration = ViewConfiguration.get(getContext());
         mTouchSlop = configuration.getScaledTouchSlop();
         mMaximumVelocity = configuration.getScaledMaximumFlingVelocity();
+        mAxisArbiter = new TouchAxisArbiter(mTouchSlop, TouchAxisArbiter.DEFAULT_LOCK_ANGLE_DEGREES,
+                TouchAxisArbiter.DEFAULT_DECISION_SAMPLES);
     }
 
     @Override
     protected void onMeasure(final int widthMeasureSpec, final int heightMeasureSpec) {
+        final long measureStartNanos = mMetricsListener != null ? System.nanoTime() : 0;
         super.onMeasure(widthMeasureSpec, heightMeasureSpec);
 
         final int width = MeasureSpec.getSize(widthMeasureSpec);
@@ -153,15 +401,23 @@ public final class HorizontalPager extends ViewGroup {
             throw new IllegalStateException("ViewSwitcher can only be used in EXACTLY mode.");
         }
 
-        // The children are given the same width and height as the workspace
-        final int count = getChildCount();
-        for (int i = 0; i < count; i++) {
-            getChildAt(i).measure(widthMeasureSpec, heightMeasureSpec);
+        final boolean specsChanged = widthMeasureSpec != mLastWidthMeasureSpec
+                || heightMeasureSpec != mLastHeightMeasureSpec || width != mLastSeenLayoutWidth;
+        mLastWidthMeasureSpec = widthMeasureSpec;
+        mLastHeightMeasureSpec = heightMeasureSpec;
+        if (specsChanged && mSnapshotCache != null) {
+            mSnapshotCache.clear();
         }
 
         if (mFirstLayout) {
-            scrollTo(mCurrentScreen * width, 0);
+            if (mRestoredScreen != INVALID_SCREEN) {
+                mCurrentScreen = PagerPhysics.clampPage(mRestoredScreen, getPageCount());
+                mRestoredScreen = INVALID_SCREEN;
+            }
+            // A restored pager lands right on its page, without a snap from page 0
+            scrollTo(getPageOffset(mCurrentScreen) + consumeRestoredScrollOffset(), 0);
             mFirstLayout = false;
+            settleRestoredScroll();
         }
 
         else if (width != mLastSeenLayoutWidth) { // Width has changed
@@ -169,40 +425,212 @@ public final class HorizontalPager extends ViewGroup {
              * Recalculate the width and scroll to the right position to be sure we're in the right
              * place in the event that we had a rotation that didn't result in an activity restart
              * (code by aveyD). Without this you can end up between two pages after a rotation.
+             * Page widths follow the pager's, so the new measured width is all we need (no
+             * Display lookup, which also was wrong for pagers narrower than the screen). The
+             * screen doesn't change, so scroll there directly instead of through the scroller.
              */
-            Display display =
-                    ((WindowManager) getContext().getSystemService(Context.WINDOW_SERVICE))
-                            .getDefaultDisplay();
-            int displayWidth = display.getWidth();
-
-            mNextScreen = Math.max(0, Math.min(getCurrentScreen(), getChildCount() - 1));
-            final int newX = mNextScreen * displayWidth;
-            final int delta = newX - getScrollX();
+            if (!mScroller.isFinished()) {
+                mScroller.forceFinished(true);
+            }
+            mNextScreen = INVALID_SCREEN;
+            mCurrentScreen = PagerPhysics.clampPage(getCurrentScreen(), getPageCount());
+            scrollTo(getPageOffset(mCurrentScreen), 0);
+        }
 
-            mScroller.startScroll(getScrollX(), 0, delta, 0, 0);
+        /*
+         * The children are given the height of the workspace and their page width. Only the
+         * pages in view (plus a prefetch margin) are measured here; the others are measured lazily
+         * as they scroll towards the viewport, and with unchanged specs only pages that requested
+         * a layout are measured again.
+         */
+        final int height = MeasureSpec.getSize(heightMeasureSpec);
+        final int lastVisiblePage = getLastVisiblePage(width);
+        final int firstPage = getWindowFirstPage(getFirstVisiblePage(width), lastVisiblePage,
+                MEASURE_PREFETCH_PAGES);
+        final int lastPage = getWindowLastPage(firstPage, lastVisiblePage, MEASURE_PREFETCH_PAGES);
+        for (int position = firstPage; position <= lastPage; position++) {
+            measurePage(position, height, specsChanged);
+        }
+        if (mNextScreen != INVALID_SCREEN) {
+            measurePage(mNextScreen, height, specsChanged);
         }
 
-        mLastSeenLayoutWidth   = width;
+        mLastSeenLayoutWidth = width;
+
+        if (mMetricsListener != null) {
+            mMetricsListener.onMeasurePass(System.nanoTime() - measureStartNanos);
+        }
     }
 
     @Override
     protected void onLayout(final boolean changed, final int l, final int t, final int r,
             final int b) {
-        int childLeft = 0;
-        final int count = getChildCount();
+        final long layoutStartNanos = mMetricsListener != null ? System.nanoTime() : 0;
 
-        for (int i = 0; i < count; i++) {
-            final View child = getChildAt(i);
-            if (child.getVisibility() != View.GONE) {
-                final int childWidth = child.getMeasuredWidth();
-                child.layout(childLeft, 0, childLeft + childWidth, child.getMeasuredHeight());
-                childLeft += childWidth;
+        // The window may have moved now that our width is known
+        populatePages();
+
+        // As in onMeasure, only pages in view (plus the prefetch margin) are laid out now
+        final int width = r - l;
+        final int lastVisiblePage = getLastVisiblePage(width);
+        final int firstPage = getWindowFirstPage(getFirstVisiblePage(width), lastVisiblePage,
+                MEASURE_PREFETCH_PAGES);
+        final int lastPage = getWindowLastPage(firstPage, lastVisiblePage, MEASURE_PREFETCH_PAGES);
+        for (int position = firstPage; position <= lastPage; position++) {
+            layoutPage(position, changed);
+        }
+        if (mNextScreen != INVALID_SCREEN && !isInWindow(mNextScreen, firstPage, lastPage)) {
+            layoutPage(mNextScreen, changed);
+        }
+
+        if (mSnapshotCache != null && !isPageMotionInProgress()) {
+            scheduleSnapshotCapture();
+        }
+        if (mPageLifecycleListener != null) {
+            dispatchPageVisibility();
+        }
+
+        if (mMetricsListener != null) {
+            mMetricsListener.onLayoutPass(System.nanoTime() - layoutStartNanos);
+        }
+    }
+
+    @Override
+    public void draw(final Canvas canvas) {
+        /*
+         * Opaque pages covering the whole viewport would paint over the background completely.
+         * Empty its bounds for the duration of super.draw instead of leaving draw out, so that
+         * onDraw, scroll bars, fading edges and the foreground still draw. Resizing a drawable
+         * invalidates it, which from inside draw would redraw the pager every frame, so the
+         * callback is detached meanwhile. Without a background, the framework skips draw and
+         * calls dispatchDraw directly anyway.
+         */
+        final Drawable background = getBackground();
+        if (background == null || !isViewportCoveredByOpaquePages()) {
+            super.draw(canvas);
+            return;
+        }
+
+        background.copyBounds(mBackgroundBounds);
+        background.setCallback(null);
+        background.setBounds(0, 0, 0, 0);
+        mBackgroundSkipped = true;
+        super.draw(canvas);
+        mBackgroundSkipped = false;
+        // After a size change, super.draw sets the bounds for the new size itself
+        if (background.getBounds().isEmpty()) {
+            background.setBounds(mBackgroundBounds);
+        }
+        background.setCallback(this);
+    }
+
+    @Override
+    protected void dispatchDraw(final Canvas canvas) {
+        /*
+         * Pages sit side by side and never overlap, so at most the two pages intersecting the
+         * viewport can be visible; skip the traversal for all the others instead of relying on
+         * the canvas clip to reject them.
+         */
+        final int width = getWidth();
+        final int firstPage = getFirstVisiblePage(width);
+        final int lastPage = getWindowLastPage(firstPage, getLastVisiblePage(width), 0);
+        final long drawingTime = getDrawingTime();
+        if (mSnapshotCache != null) {
+            mSnapshotCache.onFrameStarted();
+        }
+        final boolean drawSnapshots = mSnapshotCache != null && isPageMotionInProgress();
+        int drawn = 0;
+
+        for (int position = firstPage; position <= lastPage; position++) {
+            final View page = getPageView(toPage(position));
+            if (page != null && page.getVisibility() == View.VISIBLE) {
+                final Bitmap snapshot = drawSnapshots ? mSnapshotCache.get(toPage(position)) : null;
+                if (snapshot != null) {
+                    canvas.drawBitmap(snapshot, page.getLeft(), page.getTop(), null);
+                } else {
+                    drawChild(canvas, page, drawingTime);
+                }
+                drawn++;
+            }
+        }
+
+        mLastFrameSkippedPageDraws = getChildCount() - drawn;
+        mTotalSkippedPageDraws += mLastFrameSkippedPageDraws;
+        final Drawable background = getBackground();
+        mLastFramePixelsSaved = mBackgroundSkipped && background.getBounds().isEmpty()
+                ? width * getHeight() : 0;
+        mTotalPixelsSaved += mLastFramePixelsSaved;
+        if (mMetricsListener != null) {
+            mMetricsListener.onOverdrawSaved(mLastFramePixelsSaved);
+        }
+    }
+
+    /**
+     * Returns whether the pages in view are opaque and leave no part of the viewport uncovered,
+     * so nothing behind them can show.
+     *
+     * @return True if the pages cover the viewport.
+     */
+    private boolean isViewportCoveredByOpaquePages() {
+        final int width = getWidth();
+        if (width <= 0) {
+            return false;
+        }
+        final int firstPage = getFirstVisiblePage(width);
+        final int lastPage = getWindowLastPage(firstPage, getLastVisiblePage(width), 0);
+        final int top = getScrollY();
+        final int bottom = top + getHeight();
+        final int right = getScrollX() + width;
+        int coveredRight = getScrollX();
+        for (int position = firstPage; position <= lastPage; position++) {
+            final View page = getPageView(toPage(position));
+            if (page == null || page.getVisibility() != View.VISIBLE || !isPageOpaque(page)
+                    || page.getLeft() > coveredRight || page.getTop() > top
+                    || page.getBottom() < bottom) {
+                return false;
             }
+            coveredRight = Math.max(coveredRight, page.getRight());
+            if (coveredRight >= right) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether a page hides everything behind it.
+     *
+     * @param page The page view.
+     * @return True if pages are declared opaque or the view reports itself opaque.
+     */
+    private boolean isPageOpaque(final View page) {
+        return mPagesOpaque || page.isOpaque();
+    }
+
+    @Override
+    public ViewParent invalidateChildInParent(final int[] location, final Rect dirty) {
+        // location holds the left/top of the page containing the invalidated view
+        if (mSnapshotCache != null && getWidth() > 0) {
+            mSnapshotCache.invalidate(toPage(getPageAtOffset(location[0])));
         }
+        return super.invalidateChildInParent(location, dirty);
+    }
+
+    @Override
+    public void onDescendantInvalidated(final View child, final View target) {
+        // Hardware accelerated windows on API 26+ report invalidations here instead
+        if (mSnapshotCache != null && getWidth() > 0) {
+            mSnapshotCache.invalidate(toPage(getPageAtOffset(child.getLeft())));
+        }
+        super.onDescendantInvalidated(child, target);
     }
 
     @Override
     public boolean onInterceptTouchEvent(final MotionEvent ev) {
+        if (mDriver != null) {
+            // Followers only move with their driver
+            return false;
+        }
         /*
          * By Yoni Samlan: Modified onInterceptTouchEvent based on standard ScrollView's
          * onIntercept. The logic is designed to support a nested vertically scrolling view inside
@@ -215,46 +643,20 @@ public final class HorizontalPager extends ViewGroup {
 
         switch (action) {
             case MotionEvent.ACTION_MOVE:
-                /*
-                 * If we're in a horizontal scroll event, take it (intercept further events). But if
-                 * we're mid-vertical-scroll, don't even try; let the children deal with it. If we
-                 * haven't found a scroll event yet, check for one.
-                 */
                 if (mTouchState == TOUCH_STATE_HORIZONTAL_SCROLLING) {
                     /*
                      * We've already started a horizontal scroll; set intercept to true so we can
                      * take the remainder of all touch events in onTouchEvent.
                      */
                     intercept = true;
-                } else if (mTouchState == TOUCH_STATE_VERTICAL_SCROLLING) {
-                    // Let children handle the events for the duration of the scroll event.
-                    intercept = false;
-                } else { // We haven't picked up a scroll event yet; check for one.
-
+                } else {
                     /*
-                     * If we detected a horizontal scroll event, start stealing touch events (mark
-                     * as scrolling). Otherwise, see if we had a vertical scroll event -- if so, let
-                     * the children handle it and don't look to intercept again until the motion is
-                     * done.
+                     * Look for a horizontal scroll, also after a vertical one was detected: a child
+                     * that scrolls vertically claims the rest of the gesture with
+                     * requestDisallowInterceptTouchEvent, so this isn't called anymore, but over
+                     * children that don't the user can still turn the gesture into paging.
                      */
-
-                    final float x = ev.getX();
-                    final int xDiff = (int) Math.abs(x - mLastMotionX);
-                    boolean xMoved = xDiff > mTouchSlop;
-
-                    if (xMoved) {
-                        // Scroll if the user moved far enough along the X axis
-                        mTouchState = TOUCH_STATE_HORIZONTAL_SCROLLING;
-                        mLastMotionX = x;
-                    }
-
-                    final float y = ev.getY();
-                    final int yDiff = (int) Math.abs(y - mLastMotionY);
-                    boolean yMoved = yDiff > mTouchSlop;
-
-                    if (yMoved) {
-                        mTouchState = TOUCH_STATE_VERTICAL_SCROLLING;
-                    }
+                    intercept = arbitrateTouchAxis(ev);
                 }
 
                 break;
@@ -266,74 +668,99 @@ public final class HorizontalPager extends ViewGroup {
             case MotionEvent.ACTION_DOWN:
                 /*
                  * No motion yet, but register the coordinates so we can check for intercept at the
-                 * next MOVE event.
+                 * next MOVE events. A touch on pages that are still settling catches them right
+                 * away instead of going to a child.
                  */
-                mLastMotionY = ev.getY();
+                mAxisArbiter.start(ev.getX(), ev.getY(), ev.getEventTime());
                 mLastMotionX = ev.getX();
+                mTouchState = TOUCH_STATE_REST;
+                if (!mScroller.isFinished()) {
+                    claimHorizontalDrag(ev.getX());
+                    intercept = true;
+                }
                 break;
             default:
                 break;
             }
 
+        if (mGestureTrace != null) {
+            recordTouchEvent(GestureTrace.ROUTE_INTERCEPT, ev, intercept);
+        }
         return intercept;
     }
 
     @Override
     public boolean onTouchEvent(final MotionEvent ev) {
-
+        if (mDriver != null) {
+            return false;
+        }
+        /*
+         * One tracker is kept for the pager's lifetime and cleared at the start and end of every
+         * gesture, so tracking allocates nothing once warmed up and no movements carry over from
+         * one gesture to the next. It is recycled in onDetachedFromWindow.
+         */
         if (mVelocityTracker == null) {
             mVelocityTracker = VelocityTracker.obtain();
         }
-        mVelocityTracker.addMovement(ev);
 
         final int action = ev.getAction();
         final float x = ev.getX();
 
+        if (action == MotionEvent.ACTION_DOWN) {
+            mVelocityTracker.clear();
+        }
+        // addMovement also consumes the event's historical samples, which batched MOVE events
+        // from high-rate touch panels carry
+        mVelocityTracker.addMovement(ev);
+        if (action != MotionEvent.ACTION_MOVE) {
+            applyPendingDrag();
+        }
+
         switch (action) {
             case MotionEvent.ACTION_DOWN:
+                // Remember where the motion event started
+                mAxisArbiter.start(x, ev.getY(), ev.getEventTime());
+                mLastMotionX = x;
+
                 /*
-                 * If being flinged and user touches, stop the fling. isFinished will be false if
-                 * being flinged.
+                 * If being flinged and user touches, stop the fling and keep dragging from there.
+                 * isFinished will be false if being flinged.
                  */
                 if (!mScroller.isFinished()) {
                     mScroller.abortAnimation();
-                }
-
-                // Remember where the motion event started
-                mLastMotionX = x;
-
-                if (mScroller.isFinished()) {
-                    mTouchState = TOUCH_STATE_REST;
+                    claimHorizontalDrag(x);
                 } else {
-                    mTouchState = TOUCH_STATE_HORIZONTAL_SCROLLING;
+                    mTouchState = TOUCH_STATE_REST;
                 }
 
                 break;
             case MotionEvent.ACTION_MOVE:
-                final int xDiff = (int) Math.abs(x - mLastMotionX);
-                boolean xMoved = xDiff > mTouchSlop;
-
-                if (xMoved) {
-                    // Scroll if the user moved far enough along the X axis
-                    mTouchState = TOUCH_STATE_HORIZONTAL_SCROLLING;
+                if (mTouchState != TOUCH_STATE_HORIZONTAL_SCROLLING) {
+                    // Scroll once the user moved far enough along the X axis
+                    arbitrateTouchAxis(ev);
                 }
 
                 if (mTouchState == TOUCH_STATE_HORIZONTAL_SCROLLING) {
-                    // Scroll to follow the motion event
+                    /*
+                     * Scroll to follow the motion event, without going past the first/last page.
+                     * Each event is clamped against the position the pager will have once the
+                     * pending deltas are applied, so coalescing ends up at the same position.
+                     */
                     final int deltaX = (int) (mLastMotionX - x);
                     mLastMotionX = x;
-                    final int scrollX = getScrollX();
-
-                    if (deltaX < 0) {
-                        if (scrollX > 0) {
-                            scrollBy(Math.max(-scrollX, deltaX), 0);
-                        }
-                    } else if (deltaX > 0) {
-                        final int availableToScroll =
-                                getChildAt(getChildCount() - 1).getRight() - scrollX - getWidth();
+                    if (mPrefetcher != null && deltaX != 0) {
+                        prefetchInDirection(deltaX > 0 ? 1 : -1);
+                    }
+                    final int scrollDelta = isCircularPaging() ? deltaX
+                            : PagerPhysics.clampDragDelta(getScrollX() + mPendingDragDeltaX,
+                                    deltaX, getPageOffsets());
 
-                        if (availableToScroll > 0) {
-                            scrollBy(Math.min(availableToScroll, deltaX), 0);
+                    if (scrollDelta != 0) {
+                        if (mCoalesceTouchMoves) {
+                            mPendingDragDeltaX += scrollDelta;
+                            mFrameScheduler.scheduleFrame();
+                        } else {
+                            scrollBy(scrollDelta, 0);
                         }
                     }
                 }
@@ -346,51 +773,213 @@ public final class HorizontalPager extends ViewGroup {
                     velocityTracker.computeCurrentVelocity(VELOCITY_UNIT_PIXELS_PER_SECOND,
                             mMaximumVelocity);
                     int velocityX = (int) velocityTracker.getXVelocity();
-
-                    if (velocityX > mDensityAdjustedSnapVelocity && mCurrentScreen > 0) {
-                        // Fling hard enough to move left
-                        snapToScreen(mCurrentScreen - 1);
-                    } else if (velocityX < -mDensityAdjustedSnapVelocity
-                            && mCurrentScreen < getChildCount() - 1) {
-                        // Fling hard enough to move right
-                        snapToScreen(mCurrentScreen + 1);
-                    } else {
-                        snapToDestination();
+                    if (mMetricsListener != null) {
+                        mReleaseNanos = System.nanoTime();
                     }
 
-                    if (mVelocityTracker != null) {
-                        mVelocityTracker.recycle();
-                        mVelocityTracker = null;
+                    // A hard enough fling moves one or more screens, otherwise snap to the
+                    // destination the drag distance suggests
+                    final int targetPage = isCircularPaging()
+                            ? mPhysics.computeCircularFlingTargetPage(getScrollX(), velocityX,
+                                    getPageOffsets(), mCurrentScreen, mMaxFlingPages)
+                            : mPhysics.computeFlingTargetPage(getScrollX(), velocityX,
+                                    getPageOffsets(), mCurrentScreen, mMaxFlingPages);
+                    if (mGestureTrace != null) {
+                        recordRelease(velocityX, targetPage);
                     }
+                    // Skip the pages a long fling would pass, only the last one is scrolled
+                    final int width = getWidth();
+                    if (width > 0) {
+                        final int visiblePage = getPageAtOffset(getScrollX() + width / 2);
+                        final int jumpPage = mPhysics.computeFlingJumpPage(visiblePage,
+                                targetPage, velocityX, mMaxFlingPages);
+                        scrollBy(getPageOffset(jumpPage) - getPageOffset(visiblePage), 0);
+                    }
+                    settleToScreen(targetPage, velocityX);
                 }
 
+                mVelocityTracker.clear();
                 mTouchState = TOUCH_STATE_REST;
 
                 break;
             case MotionEvent.ACTION_CANCEL:
+                if (mTouchState == TOUCH_STATE_HORIZONTAL_SCROLLING) {
+                    // Don't leave the pager stuck between two screens
+                    snapToScreen(isCircularPaging()
+                            ? mPhysics.computeCircularDestinationPage(getScrollX(),
+                                    getPageOffsets(), mCurrentScreen)
+                            : mPhysics.computeDestinationPage(getScrollX(), getPageOffsets(),
+                                    mCurrentScreen));
+                }
+
+                mVelocityTracker.clear();
                 mTouchState = TOUCH_STATE_REST;
                 break;
             default:
                 break;
         }
 
+        if (mGestureTrace != null) {
+            recordTouchEvent(GestureTrace.ROUTE_TOUCH, ev, true);
+        }
         return true;
     }
 
-    @Override
-    public void computeScroll() {
+    /**
+     * Advances the snap animation and applies coalesced drags, once per display frame. Only keeps
+     * requesting frames while the scroller runs, so a finished animation costs nothing; scrollTo
+     * invalidates as needed by itself.
+     *
+     * @param frameTimeNanos The frame time.
+     */
+    private void onAnimationFrame(final long frameTimeNanos) {
+        mInAnimationFrame = true;
+        if (mPageUpdatesPending) {
+            applyPageUpdates();
+        }
+        applyPendingDrag();
+
         if (mScroller.computeScrollOffset()) {
+            if (mMetricsListener != null) {
+                recordAnimationFrame(frameTimeNanos);
+            }
             scrollTo(mScroller.getCurrX(), mScroller.getCurrY());
-            postInvalidate();
+            mFrameScheduler.scheduleFrame();
+            if (mGestureTrace != null) {
+                recordAnimationStep(GestureTrace.RECORD_FRAME, frameTimeNanos, getScrollX());
+            }
         } else if (mNextScreen != INVALID_SCREEN) {
-            mCurrentScreen = Math.max(0, Math.min(mNextScreen, getChildCount() - 1));
+            final int settledPage = mNextScreen;
+            mNextScreen = INVALID_SCREEN;
+            if (isCircularPaging()) {
+                settleCircularScroll(settledPage);
+            } else {
+                mCurrentScreen = Math.max(0, Math.min(settledPage, getPageCount() - 1));
+            }
 
-            // Notify observer about screen change
-            if (mOnScreenSwitchListener != null) {
-                mOnScreenSwitchListener.onScreenSwitched(mCurrentScreen);
+            // Notify observers about screen change once this frame is done
+            mScreenSwitchDispatcher.dispatchScreenSwitched(mCurrentScreen);
+            if (mGestureTrace != null) {
+                recordAnimationStep(GestureTrace.RECORD_SWITCH, frameTimeNanos, mCurrentScreen);
             }
 
-            mNextScreen = INVALID_SCREEN;
+            if (mMetricsListener != null) {
+                reportSettled();
+            }
+
+            populatePages();
+
+            if (mSnapshotCache != null) {
+                scheduleSnapshotCapture();
+            }
+            if (mPageLifecycleListener != null) {
+                dispatchPageSettled();
+            }
+            for (int i = 0; i < mFollowers.length; i++) {
+                mFollowers[i].followSettle(mCurrentScreen, true);
+            }
+        }
+
+        if (mPageScrollDirty) {
+            dispatchPageScrolled();
+        }
+        if (mLayerPromoter != null) {
+            updatePageLayers();
+        }
+        mInAnimationFrame = false;
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        // MemoryTrimCallbacks implements an API 14 interface, so it can't be loaded before that
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+            mMemoryTrimCallbacks =
+                    MemoryTrimCallbacks.register(getContext(), mMemoryTrimCallback);
+        }
+
+        // Detaching canceled the frame callback; pick up a snap or page updates where they stopped
+        if (!mScroller.isFinished() || mNextScreen != INVALID_SCREEN || mPageUpdatesPending) {
+            mFrameScheduler.scheduleFrame();
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if (mMemoryTrimCallbacks != null) {
+            mMemoryTrimCallbacks.unregister();
+            mMemoryTrimCallbacks = null;
+        }
+        releasePageLayers();
+        mFrameScheduler.cancelFrame();
+        applyPendingDrag();
+        if (mPrefetcher != null) {
+            mPrefetcher.cancelAll();
+        }
+
+        if (mVelocityTracker != null) {
+            mVelocityTracker.recycle();
+            mVelocityTracker = null;
+        }
+    }
+
+    @Override
+    protected Parcelable onSaveInstanceState() {
+        final SavedState state = new SavedState(super.onSaveInstanceState());
+        state.currentScreen = mCurrentScreen;
+        state.nextScreen = mNextScreen != INVALID_SCREEN ? toPage(mNextScreen) : INVALID_SCREEN;
+        final int pageWidth = getPageCount() > 0 && !mFirstLayout
+                ? getPageOffsets().getPageWidth(mCurrentScreen) : 0;
+        if (pageWidth > 0) {
+            state.scrollFraction =
+                    (getScrollX() - getPageOffset(mCurrentScreen)) / (float) pageWidth;
+        }
+        return state;
+    }
+
+    @Override
+    protected void onRestoreInstanceState(final Parcelable state) {
+        if (!(state instanceof SavedState)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
+        final SavedState savedState = (SavedState) state;
+        super.onRestoreInstanceState(savedState.getSuperState());
+
+        // A snap that was under way goes straight to its screen instead of animating again
+        final boolean snapping = savedState.nextScreen != INVALID_SCREEN;
+        mRestoredScrollFraction = snapping ? 0 : savedState.scrollFraction;
+        final int screen = snapping ? savedState.nextScreen : savedState.currentScreen;
+        if (getPageCount() > 0) {
+            restoreScreen(screen);
+        } else {
+            // Wait for the adapter or its data
+            mRestoredScreen = screen;
+        }
+    }
+
+    @Override
+    protected void onScrollChanged(final int l, final int t, final int oldl, final int oldt) {
+        super.onScrollChanged(l, t, oldl, oldt);
+        populatePages();
+        preparePagesInView();
+        if (mPageLifecycleListener != null) {
+            dispatchPageVisibility();
+        }
+        if (mLayerPromoter != null) {
+            updatePageLayers();
+        }
+        if (mFollowers.length > 0) {
+            scrollFollowers();
+        }
+
+        // Drags and snap animations both end up here; report the progress once per frame
+        if (mPageScrollListeners.length > 0) {
+            mPageScrollDirty = true;
+            if (!mInAnimationFrame) {
+                mFrameScheduler.scheduleFrame();
+            }
         }
     }
 
@@ -404,101 +993,2464 @@ public final class HorizontalPager extends ViewGroup {
     }
 
     /**
-     * Sets the current screen.
+     * Sets the current screen. An animated switch to a screen more than
+     * {@link #setLongJumpThreshold(int)} pages away jumps straight to the neighboring page and only
+     * animates the last page, instead of scrolling past (and drawing) every page in between.
      *
      * @param currentScreen The new screen.
      * @param animate True to smoothly scroll to the screen, false to snap instantly
      */
     public void setCurrentScreen(final int currentScreen, final boolean animate) {
-        mCurrentScreen = Math.max(0, Math.min(currentScreen, getChildCount() - 1));
+        mCurrentScreen = isCircularPaging() ? toPage(currentScreen)
+                : Math.max(0, Math.min(currentScreen, getPageCount() - 1));
         if (animate) {
-            snapToScreen(currentScreen, ANIMATION_SCREEN_SET_DURATION_MILLIS);
+            final int width = getWidth();
+            int targetPage = mCurrentScreen;
+            if (width > 0) {
+                final int visiblePage = getPageAtOffset(getScrollX() + width / 2);
+                if (isCircularPaging()) {
+                    // Go the shorter way around
+                    targetPage = getNearestCircularPage(mCurrentScreen, visiblePage);
+                }
+                if (mLongJumpThreshold > 0) {
+                    jumpCloseTo(targetPage, mLongJumpThreshold);
+                }
+            }
+            snapToScreen(targetPage, ANIMATION_SCREEN_SET_DURATION_MILLIS);
         } else {
-            scrollTo(mCurrentScreen * getWidth(), 0);
+            scrollTo(getPageOffset(mCurrentScreen), 0);
+            populatePages();
+            if (mPageLifecycleListener != null && getWidth() > 0) {
+                dispatchPageSettled();
+            }
+            for (int i = 0; i < mFollowers.length; i++) {
+                mFollowers[i].followSettle(mCurrentScreen, false);
+            }
         }
         invalidate();
     }
 
     /**
-     * Sets the {@link OnScreenSwitchListener}.
+     * Makes paging wrap around: dragging or flinging past the last page continues with the first
+     * one and vice versa. No page is duplicated; near the seam the last and first pages are simply
+     * laid out next to each other, and the scroll position is moved back by whole rounds when a
+     * snap settles, so looping any number of times costs no extra memory. Needs at least two
+     * pages; screen indices stay between 0 and {@link #getPageCount()} - 1.
      *
-     * @param onScreenSwitchListener The listener for switch events.
+     * @param circular True to wrap around, false for a first and a last page.
      */
-    public void setOnScreenSwitchListener(final OnScreenSwitchListener onScreenSwitchListener) {
-        mOnScreenSwitchListener = onScreenSwitchListener;
+    public void setCircular(final boolean circular) {
+        if (circular == mCircular) {
+            return;
+        }
+        if (!mScroller.isFinished()) {
+            mScroller.forceFinished(true);
+        }
+        mNextScreen = INVALID_SCREEN;
+        mCircular = circular;
+
+        resetPopulatedWindow();
+        if (!mFirstLayout) {
+            scrollTo(getPageOffset(mCurrentScreen), 0);
+        }
+        populatePages();
+        requestLayout();
     }
 
     /**
-     * Snaps to the screen we think the user wants (the current screen for very small movements; the
-     * next/prev screen for bigger movements).
+     * Returns whether paging wraps around.
+     *
+     * @return True if the pager is circular.
      */
-    private void snapToDestination() {
-        final int screenWidth = getWidth();
-        int scrollX = getScrollX();
-        int whichScreen = mCurrentScreen;
-        int deltaX = scrollX - (screenWidth * mCurrentScreen);
+    public boolean isCircular() {
+        return mCircular;
+    }
 
-        // Check if they want to go to the prev. screen
-        if ((deltaX < 0) && mCurrentScreen != 0
-                && ((screenWidth / FRACTION_OF_SCREEN_WIDTH_FOR_SWIPE) < -deltaX)) {
-            whichScreen--;
-            // Check if they want to go to the next screen
-        } else if ((deltaX > 0) && (mCurrentScreen + 1 != getChildCount())
-                && ((screenWidth / FRACTION_OF_SCREEN_WIDTH_FOR_SWIPE) < deltaX)) {
-            whichScreen++;
-        }
+    /**
+     * Sets how far an animated {@link #setCurrentScreen(int, boolean)} may go before it jumps
+     * instead of scrolling through the pages in between. The listener is still only told about the
+     * final screen.
+     *
+     * @param pages The largest distance, in pages, that is animated all the way; 0 to always
+     *            animate all the way.
+     */
+    public void setLongJumpThreshold(final int pages) {
+        mLongJumpThreshold = Math.max(0, pages);
+    }
 
-        snapToScreen(whichScreen);
+    /**
+     * Returns how far an animated screen switch may go before it jumps instead.
+     *
+     * @return The threshold in pages; 0 if switches always animate all the way.
+     */
+    public int getLongJumpThreshold() {
+        return mLongJumpThreshold;
     }
 
     /**
-     * Snap to a specific screen, animating automatically for a duration proportional to the
-     * distance left to scroll.
+     * Sets how many pages a single fling may move. With more than one, the release velocity is
+     * projected through a constant deceleration to where the fling would come to rest, and the
+     * pager settles on the page nearest to it; slow drags still move at most one page. The pages a
+     * fling passes are skipped instead of scrolled through, so they are never attached or drawn.
      *
-     * @param whichScreen Screen to snap to
+     * @param pages The most pages a fling moves; 1 (the default) for next/previous page flings.
      */
-    private void snapToScreen(final int whichScreen) {
-        snapToScreen(whichScreen, -1);
+    public void setMaxFlingPages(final int pages) {
+        mMaxFlingPages = Math.max(1, pages);
     }
 
     /**
-     * Snaps to a specific screen, animating for a specific amount of time to get there.
+     * Returns how many pages a single fling may move.
      *
-     * @param whichScreen Screen to snap to
-     * @param duration -1 to automatically time it based on scroll distance; a positive number to
-     *            make the scroll take an exact duration.
+     * @return The page limit; 1 if flings only move to the next/previous page.
      */
-    private void snapToScreen(final int whichScreen, final int duration) {
-        /*
-         * Modified by Yoni Samlan: Allow new snapping even during an ongoing scroll animation. This
-         * is intended to make HorizontalPager work as expected when used in conjunction with a
-         * RadioGroup used as "tabbed" controls. Also, make the animation take a percentage of our
-         * normal animation time, depending how far they've already scrolled.
-         */
-        mNextScreen = Math.max(0, Math.min(whichScreen, getChildCount() - 1));
-        final int newX = mNextScreen * getWidth();
-        final int delta = newX - getScrollX();
-
-        if (duration < 0) {
-             // E.g. if they've scrolled 80% of the way, only animation for 20% of the duration
-            mScroller.startScroll(getScrollX(), 0, delta, 0, (int) (Math.abs(delta)
-                    / (float) getWidth() * ANIMATION_SCREEN_SET_DURATION_MILLIS));
-        } else {
-            mScroller.startScroll(getScrollX(), 0, delta, 0, duration);
-        }
+    public int getMaxFlingPages() {
+        return mMaxFlingPages;
+    }
 
-        invalidate();
+    /**
+     * Returns the number of pages: the adapter's count if an adapter is set, otherwise the number
+     * of child views.
+     *
+     * @return The page count.
+     */
+    public int getPageCount() {
+        return mAdapter != null ? mAdapter.getCount() : getChildCount();
     }
 
     /**
-     * Listener for the event that the HorizontalPager switches to a new view.
+     * Returns the attached view for a page.
+     *
+     * @param position The page position.
+     * @return The page's view, or null if it is not currently attached.
      */
-    public static interface OnScreenSwitchListener {
+    public View getPageView(final int position) {
+        if (mAdapter != null) {
+            return mActivePages.get(position);
+        }
+        return position >= 0 && position < getChildCount() ? getChildAt(position) : null;
+    }
+
+    /**
+     * Sets the adapter that supplies the pages, replacing any child views added directly. Pass
+     * null to go back to plain child views.
+     *
+     * @param adapter The new adapter, or null.
+     */
+    public void setAdapter(final PageAdapter adapter) {
+        releasePageLayers();
+        if (mAdapter != null) {
+            mAdapter.unregisterDataSetObserver(mDataSetObserver);
+            mAdapter.unregisterPageObserver(mPageObserver);
+            recycleAllPages();
+        }
+        recyclePreparedPages();
+        removeAllViews();
+        mRecycler.clear();
+        if (mSnapshotCache != null) {
+            mSnapshotCache.clear();
+        }
+        // The old pages are gone with their adapter
+        mPageVisibilities.clear();
+
+        mAdapter = adapter;
+        mPageOffsetsWidth = -1;
+        mPageUpdatesPending = false;
+        if (mPrefetcher != null) {
+            mPrefetcher.setAdapter(adapter);
+        }
+        mCurrentScreen = 0;
+        mNextScreen = INVALID_SCREEN;
+        if (!mScroller.isFinished()) {
+            mScroller.abortAnimation();
+        }
+        scrollTo(0, 0);
+
+        if (mAdapter != null) {
+            mAdapter.registerDataSetObserver(mDataSetObserver);
+            mAdapter.registerPageObserver(mPageObserver);
+            resetPopulatedWindow();
+            if (mRestoredScreen != INVALID_SCREEN && getPageCount() > 0) {
+                restoreScreen(mRestoredScreen);
+            }
+            populatePages();
+        }
+        requestLayout();
+    }
+
+    /**
+     * Returns the adapter supplying the pages.
+     *
+     * @return The adapter, or null if the pager uses plain child views.
+     */
+    public PageAdapter getAdapter() {
+        return mAdapter;
+    }
+
+    /**
+     * Enables background preparation of the pages ahead: as the user drags or the pager animates
+     * towards a screen, {@link PageAdapter#preparePageData(int)} runs on the executor for the next
+     * pages in that direction. The prepared data is then bound to page views on the UI thread in
+     * short time slices, before those pages scroll into view. Requests for pages the user turned
+     * away from are cancelled. Only has an effect with an adapter.
+     *
+     * @param executor The executor to prepare page data on, or null to disable prefetching.
+     * @param pages How many pages ahead to prepare.
+     */
+    public void setPrefetchExecutor(final Executor executor, final int pages) {
+        if (mPrefetcher != null) {
+            mPrefetcher.cancelAll();
+            mPrefetcher = null;
+        }
+        recyclePreparedPages();
+        mPrefetchDirection = 0;
+
+        if (executor != null && pages > 0) {
+            mPrefetcher = new PagePrefetcher(executor, pages, mPrefetchCallback);
+            mPrefetcher.setAdapter(mAdapter);
+        }
+    }
+
+    /**
+     * Sets how many pages to keep attached on either side of the visible pages (and of a screen
+     * being snapped to) when using an adapter. Pages outside that window are recycled.
+     *
+     * @param limit The number of off-screen pages per side; values below 0 are treated as 0.
+     */
+    public void setOffscreenPageLimit(final int limit) {
+        final int newLimit = Math.max(0, limit);
+        if (newLimit != mOffscreenPageLimit) {
+            mOffscreenPageLimit = newLimit;
+            resetPopulatedWindow();
+            populatePages();
+        }
+    }
+
+    /**
+     * Returns how many pages are kept attached on either side of the visible pages.
+     *
+     * @return The off-screen page limit.
+     */
+    public int getOffscreenPageLimit() {
+        return mOffscreenPageLimit;
+    }
+
+    /**
+     * Returns how many child views the last drawn frame skipped because they were out of view.
+     *
+     * @return The number of children skipped in the last frame.
+     */
+    public int getLastFrameSkippedPageDraws() {
+        return mLastFrameSkippedPageDraws;
+    }
+
+    /**
+     * Returns how many child draws have been skipped because the child was out of view, summed
+     * over all frames drawn so far.
+     *
+     * @return The total number of skipped child draws.
+     */
+    public long getTotalSkippedPageDraws() {
+        return mTotalSkippedPageDraws;
+    }
+
+    /**
+     * Declares every page opaque: each page paints all of its pixels, with no transparent parts.
+     * Without the declaration, pages count as opaque if {@link View#isOpaque()} says so, e.g.
+     * views with an opaque background. While opaque pages cover the whole viewport, the pager
+     * doesn't draw its background. See {@link #getLastFramePixelsSaved()} for the savings.
+     *
+     * @param opaque True if all pages are opaque.
+     */
+    public void setPagesOpaque(final boolean opaque) {
+        mPagesOpaque = opaque;
+        invalidate();
+    }
+
+    /**
+     * Returns whether every page is declared opaque.
+     *
+     * @return True if pages are declared opaque.
+     */
+    public boolean isPagesOpaque() {
+        return mPagesOpaque;
+    }
+
+    /**
+     * Returns how many pixels the last drawn frame didn't paint because opaque pages covered them,
+     * i.e. the area of the skipped background.
+     *
+     * @return The number of pixels saved in the last frame.
+     */
+    public int getLastFramePixelsSaved() {
+        return mLastFramePixelsSaved;
+    }
+
+    /**
+     * Returns how many pixels have been saved by skipping covered drawing, summed over all frames
+     * drawn so far.
+     *
+     * @return The total number of pixels saved.
+     */
+    public long getTotalPixelsSaved() {
+        return mTotalPixelsSaved;
+    }
+
+    /**
+     * Enables drawing bitmap snapshots of pages instead of their live view trees while the pager
+     * is dragged or animating between screens, which keeps frames cheap for pages that are
+     * expensive to draw. Each page is snapshotted once it has settled; a page that invalidates
+     * itself loses its snapshot and is drawn live until it settles again. Only use this for pages
+     * that can be drawn into a software canvas.
+     *
+     * @param maxSizeBytes The most bitmap memory to spend on snapshots, evicting the least
+     *            recently used ones beyond it; 0 to disable snapshots.
+     */
+    public void setSnapshotCacheSize(final int maxSizeBytes) {
+        if (mSnapshotCache != null) {
+            mSnapshotCache.clear();
+            mSnapshotCache = null;
+        }
+        removeCallbacks(mCaptureSnapshotsRunnable);
+
+        if (maxSizeBytes > 0) {
+            mSnapshotCache = new PageSnapshotCache(maxSizeBytes);
+            if (mSnapshotCanvas == null) {
+                mSnapshotCanvas = new Canvas();
+            }
+            scheduleSnapshotCapture();
+        }
+        invalidate();
+    }
+
+    /**
+     * Returns the page snapshot cache, e.g. to read its hit, miss and eviction counts.
+     *
+     * @return The cache, or null if snapshots are disabled.
+     */
+    public PageSnapshotCache getSnapshotCache() {
+        return mSnapshotCache;
+    }
+
+    /**
+     * Sets the interpolator for snap animations. With an interpolator that starts moving right
+     * away (like the default {@link DecelerateInterpolator}), a snap after a fling starts at the
+     * fling's velocity instead of taking the usual proportional duration.
+     *
+     * @param interpolator The interpolator, or null for the default.
+     */
+    public void setInterpolator(final Interpolator interpolator) {
+        mInterpolator = interpolator != null ? interpolator : new DecelerateInterpolator();
+        mInterpolatorInitialSlope =
+                mInterpolator.getInterpolation(INTERPOLATOR_SLOPE_STEP) / INTERPOLATOR_SLOPE_STEP;
+
+        // Scroller takes its interpolator at construction; finish a running snap on the old one
+        final boolean animating = mScroller != null && !mScroller.isFinished();
+        final int finalX = animating ? mScroller.getFinalX() : 0;
+        mScroller = new Scroller(getContext(), mInterpolator);
+        if (animating) {
+            scrollTo(finalX, 0);
+        }
+    }
+
+    /**
+     * Returns the interpolator for snap animations.
+     *
+     * @return The interpolator.
+     */
+    public Interpolator getInterpolator() {
+        return mInterpolator;
+    }
+
+    /**
+     * Sets whether drag MOVE events are coalesced: instead of scrolling (and invalidating) once per
+     * event, deltas are accumulated and applied with a single scroll per frame. This saves work on
+     * touch panels that report several events per display frame; the pager ends up at the same
+     * position either way.
+     *
+     * @param coalesce True to coalesce MOVE events.
+     */
+    public void setCoalesceTouchMoves(final boolean coalesce) {
+        if (!coalesce) {
+            applyPendingDrag();
+        }
+        mCoalesceTouchMoves = coalesce;
+    }
+
+    /**
+     * Returns whether drag MOVE events are coalesced into one scroll per frame.
+     *
+     * @return True if MOVE events are coalesced.
+     */
+    public boolean isCoalesceTouchMoves() {
+        return mCoalesceTouchMoves;
+    }
+
+    /**
+     * Enables putting the pages in view on hardware layers while the pages move, from the start
+     * of a horizontal drag until the snap animation settles. Motion frames then only composite
+     * the one or two layers instead of redrawing the pages' view hierarchies. Pages that scroll
+     * into view on the way are promoted as well, and pages that scroll out of view are released
+     * right away. Only has an effect on API 11+ in hardware accelerated windows, on pages that
+     * don't have a layer of their own, and while page snapshots are disabled.
+     *
+     * @param promote True to promote moving pages to hardware layers.
+     */
+    public void setPromotePagesToLayers(final boolean promote) {
+        mPromotePagesToLayers = promote;
+        if (promote) {
+            if (mLayerPromoter == null) {
+                mLayerPromoter = new PageLayerPromoter();
+            }
+            updatePageLayers();
+        } else {
+            releasePageLayers();
+        }
+    }
+
+    /**
+     * Returns whether moving pages are put on hardware layers.
+     *
+     * @return True if pages are promoted to hardware layers while they move.
+     */
+    public boolean isPromotePagesToLayers() {
+        return mPromotePagesToLayers;
+    }
+
+    /**
+     * Sets how far from the horizontal a gesture may point to page right away, and from the
+     * vertical to go to the children right away. Gestures in between wait for a few more samples
+     * (see {@link #setAxisDecisionSamples(int)}) and then go to the axis they moved along most.
+     * Defaults to {@link TouchAxisArbiter#DEFAULT_LOCK_ANGLE_DEGREES}.
+     *
+     * @param degrees An angle between 0 and 45 degrees.
+     */
+    public void setAxisLockAngle(final float degrees) {
+        mAxisArbiter.setLockAngle(degrees);
+    }
+
+    /**
+     * Returns how far from an axis a gesture may point to be decided right away.
+     *
+     * @return The angle in degrees.
+     */
+    public float getAxisLockAngle() {
+        return mAxisArbiter.getLockAngle();
+    }
+
+    /**
+     * Sets how many touch samples, historical ones included, a diagonal gesture waits for before
+     * it goes to the axis it moved along most. Defaults to
+     * {@link TouchAxisArbiter#DEFAULT_DECISION_SAMPLES}.
+     *
+     * @param samples At least 1; 1 decides every gesture as soon as it leaves the touch slop.
+     */
+    public void setAxisDecisionSamples(final int samples) {
+        mAxisArbiter.setDecisionSamples(samples);
+    }
+
+    /**
+     * Returns how many touch samples a diagonal gesture waits for.
+     *
+     * @return The sample count.
+     */
+    public int getAxisDecisionSamples() {
+        return mAxisArbiter.getDecisionSamples();
+    }
+
+    /**
+     * Returns how many times a page was put on a hardware layer since
+     * {@link #setPromotePagesToLayers(boolean)} was first enabled.
+     *
+     * @return The promotion count.
+     */
+    public int getPageLayerPromotionCount() {
+        return mLayerPromoter != null ? mLayerPromoter.getPromotionCount() : 0;
+    }
+
+    /**
+     * Returns how long page layers stayed live, summed over all released layers. The time of
+     * each layer is also reported to {@link MetricsListener#onPageLayerReleased(int, long)}.
+     *
+     * @return The total time in nanoseconds.
+     */
+    public long getTotalPageLayerNanos() {
+        return mLayerPromoter != null ? mLayerPromoter.getTotalLayerNanos() : 0;
+    }
+
+    /**
+     * Adds an {@link OnPageScrollListener}, told about the scroll position at most once per frame
+     * while the pages move.
+     *
+     * @param listener The listener.
+     */
+    public void addOnPageScrollListener(final OnPageScrollListener listener) {
+        final OnPageScrollListener[] listeners =
+                new OnPageScrollListener[mPageScrollListeners.length + 1];
+        System.arraycopy(mPageScrollListeners, 0, listeners, 0, mPageScrollListeners.length);
+        listeners[mPageScrollListeners.length] = listener;
+        mPageScrollListeners = listeners;
+    }
+
+    /**
+     * Removes an {@link OnPageScrollListener}.
+     *
+     * @param listener The listener.
+     */
+    public void removeOnPageScrollListener(final OnPageScrollListener listener) {
+        for (int i = 0; i < mPageScrollListeners.length; i++) {
+            if (mPageScrollListeners[i] == listener) {
+                final OnPageScrollListener[] listeners =
+                        new OnPageScrollListener[mPageScrollListeners.length - 1];
+                System.arraycopy(mPageScrollListeners, 0, listeners, 0, i);
+                System.arraycopy(mPageScrollListeners, i + 1, listeners, i,
+                        listeners.length - i);
+                mPageScrollListeners = listeners;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Links another pager to this one. The follower mirrors this pager's drags, flings and snap
+     * animations within the same frame, mapped page by page: being halfway through page 2 here
+     * puts the follower halfway through its page 2, whatever the page widths. When this pager
+     * settles, the follower settles on the same screen and notifies its own listeners once; it
+     * never runs a snap of its own. While linked, the follower ignores touches (its pages still
+     * get them) and its own screen changes only last until this pager moves again. Followers can
+     * have followers of their own.
+     *
+     * @param follower The pager to link.
+     * @throws IllegalArgumentException If the follower is this pager or drives it, directly or
+     *             through other links.
+     * @throws IllegalStateException If the follower already follows another pager.
+     */
+    public void addLinkedPager(final HorizontalPager follower) {
+        for (HorizontalPager pager = this; pager != null; pager = pager.mDriver) {
+            if (pager == follower) {
+                throw new IllegalArgumentException("Linking the pagers would form a loop");
+            }
+        }
+        if (follower.mDriver == this) {
+            return;
+        } else if (follower.mDriver != null) {
+            throw new IllegalStateException("The pager already follows another pager");
+        }
+
+        final HorizontalPager[] followers = new HorizontalPager[mFollowers.length + 1];
+        System.arraycopy(mFollowers, 0, followers, 0, mFollowers.length);
+        followers[mFollowers.length] = follower;
+        mFollowers = followers;
+        follower.startFollowing(this);
+    }
+
+    /**
+     * Unlinks a pager linked with {@link #addLinkedPager(HorizontalPager)}. It stays where it is
+     * and handles touches again.
+     *
+     * @param follower The linked pager.
+     */
+    public void removeLinkedPager(final HorizontalPager follower) {
+        for (int i = 0; i < mFollowers.length; i++) {
+            if (mFollowers[i] == follower) {
+                final HorizontalPager[] followers = new HorizontalPager[mFollowers.length - 1];
+                System.arraycopy(mFollowers, 0, followers, 0, i);
+                System.arraycopy(mFollowers, i + 1, followers, i, followers.length - i);
+                mFollowers = followers;
+                follower.mDriver = null;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the pager this one is linked to as a follower.
+     *
+     * @return The driving pager, or null if this pager isn't linked to one.
+     */
+    public HorizontalPager getLinkedDriver() {
+        return mDriver;
+    }
+
+    /**
+     * Sets a {@link MetricsListener} to receive frame and latency measurements. Measuring costs
+     * nothing while no listener is set and allocates nothing while one is.
+     *
+     * @param metricsListener The listener, or null to stop measuring.
+     * @param frameBudgetNanos Animation frames taking longer than this are counted as over budget;
+     *            0 or less for the default of one frame at 60 frames per second.
+     */
+    public void setMetricsListener(final MetricsListener metricsListener,
+            final long frameBudgetNanos) {
+        mMetricsListener = metricsListener;
+        mFrameBudgetNanos = frameBudgetNanos > 0 ? frameBudgetNanos : DEFAULT_FRAME_BUDGET_NANOS;
+        mReleaseNanos = 0;
+        mLastAnimationFrameNanos = 0;
+    }
+
+    /**
+     * Sets a {@link PageLifecycleListener} to tell pages when they scroll into and out of view,
+     * when the pager settles on one, and when memory runs low. Tracking costs nothing while no
+     * listener is set. The pages in view are reported right away.
+     *
+     * @param listener The listener, or null to stop tracking.
+     */
+    public void setPageLifecycleListener(final PageLifecycleListener listener) {
+        mPageLifecycleListener = listener;
+        mPageVisibilities.clear();
+        if (listener != null) {
+            dispatchPageVisibility();
+        }
+    }
+
+    /**
+     * Sets how far from the current screen a hidden page must be to release its resources on a
+     * mild memory trim ({@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_MODERATE} and
+     * {@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_LOW}). From
+     * {@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_CRITICAL} on, every hidden page releases its
+     * resources, whatever its distance.
+     *
+     * @param pages The distance in pages; hidden pages further away than this are trimmed.
+     */
+    public void setTrimDistance(final int pages) {
+        mTrimDistance = Math.max(0, pages);
+    }
+
+    /**
+     * Returns how far from the current screen a hidden page must be to be trimmed on a mild memory
+     * trim.
+     *
+     * @return The distance in pages.
+     */
+    public int getTrimDistance() {
+        return mTrimDistance;
+    }
+
+    /**
+     * Releases memory for a system trim level: asks the hidden pages beyond the trim distance to
+     * release their resources through {@link PageLifecycleListener#onTrimPage(int, View, int)}
+     * and, from {@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_CRITICAL} on, also drops the page
+     * snapshots and the pages prefetched ahead. Called automatically while the pager is attached
+     * on API 14+; call it from {@link android.app.Activity#onLowMemory()} on older platforms.
+     *
+     * @param level One of the {@code TRIM_MEMORY_...} levels of {@link ComponentCallbacks2}.
+     * @return The memory released, in bytes, as far as it is known.
+     */
+    public long trimMemory(final int level) {
+        final boolean critical = level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL;
+        long reclaimedBytes = 0;
+        if (critical) {
+            if (mSnapshotCache != null) {
+                reclaimedBytes += mSnapshotCache.getSizeBytes();
+                mSnapshotCache.clear();
+            }
+            recyclePreparedPages();
+        }
+
+        if (mPageLifecycleListener != null) {
+            dispatchPageVisibility();
+            final int distance = critical ? 0 : mTrimDistance;
+            final int pageCount = mAdapter != null ? mActivePages.size() : getChildCount();
+            for (int i = 0; i < pageCount; i++) {
+                final int page = mAdapter != null ? mActivePages.keyAt(i) : i;
+                if (mPageVisibilities.get(page, PAGE_HIDDEN) == PAGE_HIDDEN
+                        && getPageDistance(page, mCurrentScreen) > distance) {
+                    reclaimedBytes +=
+                            mPageLifecycleListener.onTrimPage(page, getPageView(page), level);
+                }
+            }
+        }
+
+        mTotalReclaimedBytes += reclaimedBytes;
+        return reclaimedBytes;
+    }
+
+    /**
+     * Returns how much memory {@link #trimMemory(int)} released so far, summed over all trims and
+     * pages.
+     *
+     * @return The total in bytes.
+     */
+    public long getTotalReclaimedBytes() {
+        return mTotalReclaimedBytes;
+    }
+
+    /**
+     * Starts recording the touch events the pager receives into a {@link GestureTrace}, with
+     * their outcomes, the scroll positions of snap animations and the resulting screen switches,
+     * to replay them later against {@link PagerPhysics} on a plain JVM. Records are written on the
+     * UI thread as events arrive, so pass an in-memory stream (such as a
+     * {@link java.io.ByteArrayOutputStream}) and write it out elsewhere. Replaces a running
+     * recording without closing it. Call once the pager has been laid out.
+     *
+     * @param out The stream to write the trace to.
+     * @throws IOException If writing the header fails.
+     */
+    public void startGestureTrace(final OutputStream out) throws IOException {
+        final GestureTrace.Header header = new GestureTrace.Header();
+        final PageOffsetIndex pages = getPageOffsets();
+        header.viewportWidth = getWidth();
+        header.pageWidths = new int[pages.getPageCount()];
+        for (int i = 0; i < header.pageWidths.length; i++) {
+            header.pageWidths[i] = pages.getPageWidth(i);
+        }
+        header.circular = isCircularPaging();
+        header.currentScreen = mCurrentScreen;
+        header.scrollX = getScrollX() + mPendingDragDeltaX;
+        header.touchSlop = mTouchSlop;
+        header.axisLockAngle = mAxisArbiter.getLockAngle();
+        header.axisDecisionSamples = mAxisArbiter.getDecisionSamples();
+        header.snapVelocity = mPhysics.getSnapVelocity();
+        header.fractionOfPageForSwipe = mPhysics.getFractionOfPageForSwipe();
+        header.fullSnapDurationMillis = mPhysics.getFullSnapDurationMillis();
+        header.flingDeceleration = mPhysics.getFlingDeceleration();
+        header.maxFlingPages = mMaxFlingPages;
+        header.interpolatorInitialSlope = mInterpolatorInitialSlope;
+
+        mGestureTrace = new GestureTrace.Writer(out, header, SystemClock.uptimeMillis());
+        mGestureTraceError = null;
+    }
+
+    /**
+     * Stops recording a gesture trace and closes its stream.
+     *
+     * @throws IOException If writing the trace failed at any point; recording stops at the
+     *             first failure.
+     */
+    public void stopGestureTrace() throws IOException {
+        final GestureTrace.Writer trace = mGestureTrace;
+        final IOException error = mGestureTraceError;
+        mGestureTrace = null;
+        mGestureTraceError = null;
+        if (trace != null) {
+            trace.close();
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Sets the {@link OnScreenSwitchListener}, replacing the one previously set with this method.
+     * Listeners added with {@link #addOnScreenSwitchListener(OnScreenSwitchListener)} are kept.
+     *
+     * @param onScreenSwitchListener The listener for switch events, or null.
+     */
+    public void setOnScreenSwitchListener(final OnScreenSwitchListener onScreenSwitchListener) {
+        if (mOnScreenSwitchListener != null) {
+            mScreenSwitchDispatcher.removeListener(mOnScreenSwitchListener);
+        }
+        mOnScreenSwitchListener = onScreenSwitchListener;
+        if (onScreenSwitchListener != null) {
+            mScreenSwitchDispatcher.addListener(onScreenSwitchListener, null);
+        }
+    }
+
+    /**
+     * Adds an {@link OnScreenSwitchListener}, called on the UI thread.
+     *
+     * @param onScreenSwitchListener The listener for switch events.
+     */
+    public void addOnScreenSwitchListener(final OnScreenSwitchListener onScreenSwitchListener) {
+        mScreenSwitchDispatcher.addListener(onScreenSwitchListener, null);
+    }
+
+    /**
+     * Adds an {@link OnScreenSwitchListener} that is called on the given executor rather than the
+     * UI thread, for listener work that doesn't touch views. Every delivered screen is handed to
+     * the executor separately, so a switch is never lost to a later one the executor gets to
+     * first.
+     *
+     * @param onScreenSwitchListener The listener for switch events.
+     * @param executor The executor to call the listener on.
+     */
+    public void addOnScreenSwitchListener(final OnScreenSwitchListener onScreenSwitchListener,
+            final Executor executor) {
+        mScreenSwitchDispatcher.addListener(onScreenSwitchListener, executor);
+    }
+
+    /**
+     * Removes an {@link OnScreenSwitchListener}, however it was added.
+     *
+     * @param onScreenSwitchListener The listener to remove.
+     */
+    public void removeOnScreenSwitchListener(final OnScreenSwitchListener onScreenSwitchListener) {
+        mScreenSwitchDispatcher.removeListener(onScreenSwitchListener);
+        if (onScreenSwitchListener == mOnScreenSwitchListener) {
+            mOnScreenSwitchListener = null;
+        }
+    }
+
+    /**
+     * Snap to a specific screen, animating automatically for a duration proportional to the
+     * distance left to scroll.
+     *
+     * @param whichScreen Screen to snap to
+     */
+    private void snapToScreen(final int whichScreen) {
+        snapToScreen(whichScreen, -1);
+    }
+
+    /**
+     * Snaps to a specific screen, animating for a specific amount of time to get there.
+     *
+     * @param whichScreen Screen to snap to
+     * @param duration -1 to automatically time it based on scroll distance; a positive number to
+     *            make the scroll take an exact duration.
+     */
+    private void snapToScreen(final int whichScreen, final int duration) {
+        /*
+         * Modified by Yoni Samlan: Allow new snapping even during an ongoing scroll animation. This
+         * is intended to make HorizontalPager work as expected when used in conjunction with a
+         * RadioGroup used as "tabbed" controls. Also, make the animation take a percentage of our
+         * normal animation time, depending how far they've already scrolled.
+         */
+        if (isCircularPaging()) {
+            mPhysics.planCircularSnap(getScrollX(), whichScreen, getPageOffsets(), duration,
+                    mSnapPlan);
+        } else {
+            mPhysics.planSnap(getScrollX(), whichScreen, getPageOffsets(), duration, mSnapPlan);
+        }
+        startSnap(mSnapPlan);
+    }
+
+    /**
+     * Moves the scroll position by whole pages to the page next to a target that is too far away
+     * to scroll to, keeping the offset into the visible page, so the pages in between are neither
+     * attached nor drawn.
+     *
+     * @param targetPage The page about to be snapped to.
+     * @param maxDistance The largest distance, in pages, that is left to scroll through.
+     */
+    private void jumpCloseTo(final int targetPage, final int maxDistance) {
+        final int width = getWidth();
+        if (width <= 0) {
+            return;
+        }
+        final int visiblePage = getPageAtOffset(getScrollX() + width / 2);
+        if (Math.abs(targetPage - visiblePage) > maxDistance) {
+            final int jumpPage = targetPage > visiblePage ? targetPage - 1 : targetPage + 1;
+            scrollBy(getPageOffset(jumpPage) - getPageOffset(visiblePage), 0);
+        }
+    }
+
+    /**
+     * Makes a restored screen the current one, positioning the pages right away if the pager has
+     * been laid out already; otherwise the first layout does.
+     *
+     * @param screen The restored screen.
+     */
+    private void restoreScreen(final int screen) {
+        mRestoredScreen = INVALID_SCREEN;
+        if (!mScroller.isFinished()) {
+            mScroller.forceFinished(true);
+        }
+        mNextScreen = INVALID_SCREEN;
+        mCurrentScreen = PagerPhysics.clampPage(screen, getPageCount());
+        if (!mFirstLayout) {
+            scrollTo(getPageOffset(mCurrentScreen) + consumeRestoredScrollOffset(), 0);
+            settleRestoredScroll();
+        }
+    }
+
+    /**
+     * Returns the restored offset into the current screen, in pixels, and forgets it.
+     *
+     * @return The scroll offset from the current screen's left edge; 0 if none was restored.
+     */
+    private int consumeRestoredScrollOffset() {
+        final float fraction = mRestoredScrollFraction;
+        mRestoredScrollFraction = 0;
+        if (fraction == 0 || getPageCount() == 0) {
+            return 0;
+        }
+        return Math.round(fraction * getPageOffsets().getPageWidth(mCurrentScreen));
+    }
+
+    /**
+     * Snaps to the nearest screen if a restored scroll position lies between two pages, as it
+     * does when the state was saved in the middle of a drag.
+     */
+    private void settleRestoredScroll() {
+        if (getScrollX() != getPageOffset(mCurrentScreen)) {
+            snapToScreen(isCircularPaging()
+                    ? mPhysics.computeCircularDestinationPage(getScrollX(), getPageOffsets(),
+                            mCurrentScreen)
+                    : mPhysics.computeDestinationPage(getScrollX(), getPageOffsets(),
+                            mCurrentScreen));
+        }
+    }
+
+    /**
+     * Settles on a screen after a drag is released, starting the animation at the release
+     * velocity if it moves towards that screen.
+     *
+     * @param whichScreen Screen to settle on
+     * @param velocityX The release velocity in pixels per second
+     */
+    private void settleToScreen(final int whichScreen, final int velocityX) {
+        if (isCircularPaging()) {
+            mPhysics.planCircularRelease(getScrollX(), whichScreen, getPageOffsets(), velocityX,
+                    mInterpolatorInitialSlope, mSnapPlan);
+        } else {
+            mPhysics.planRelease(getScrollX(), whichScreen, getPageOffsets(), velocityX,
+                    mInterpolatorInitialSlope, mSnapPlan);
+        }
+        startSnap(mSnapPlan);
+    }
+
+    /**
+     * Starts the animation described by a snap plan.
+     *
+     * @param plan The plan to run.
+     */
+    private void startSnap(final PagerPhysics.SnapPlan plan) {
+        // A switch not yet delivered is superseded by the one this snap will settle on
+        mScreenSwitchDispatcher.cancel();
+        mNextScreen = plan.targetPage;
+        populatePages();
+        mScroller.startScroll(plan.startX, 0, plan.deltaX, 0, plan.durationMillis);
+        if (mPrefetcher != null && plan.deltaX != 0) {
+            mPrefetchDirection = plan.deltaX > 0 ? 1 : -1;
+            mPrefetcher.update(toPage(mNextScreen), mPrefetchDirection, getPageCount(),
+                    isCircularPaging());
+            recycleStalePreparedPages();
+        }
+        mLastAnimationFrameNanos = 0;
+        mAnimationFrameCount = 0;
+        mAnimationFramesOverBudget = 0;
+
+        mFrameScheduler.scheduleFrame();
+    }
+
+    /**
+     * Returns the scroll position at which a page is fully in view.
+     *
+     * @param position The page position.
+     * @return The page's left edge in scroll coordinates.
+     */
+    private int getPageOffset(final int position) {
+        return isCircularPaging() ? getPageOffsets().getCircularPageOffset(position)
+                : getPageOffsets().getPageOffset(position);
+    }
+
+    /**
+     * Returns the page at a scroll position.
+     *
+     * @param offset The scroll position.
+     * @return The page position; unwrapped in circular mode.
+     */
+    private int getPageAtOffset(final int offset) {
+        return isCircularPaging() ? getPageOffsets().getCircularPageAt(offset)
+                : getPageOffsets().getPageAt(Math.max(0, offset));
+    }
+
+    /**
+     * Returns whether paging currently wraps around, which takes at least two pages.
+     *
+     * @return True if circular paging is on and possible.
+     */
+    private boolean isCircularPaging() {
+        return mCircular && getPageCount() > 1;
+    }
+
+    /**
+     * Maps a page position to the page it shows, which is only different for unwrapped positions
+     * in circular mode.
+     *
+     * @param position The page position.
+     * @return The page.
+     */
+    private int toPage(final int position) {
+        return isCircularPaging() ? PagerPhysics.wrapPage(position, getPageCount()) : position;
+    }
+
+    /**
+     * Returns the unwrapped position of a page closest to another unwrapped position, for circular
+     * mode.
+     *
+     * @param page The page.
+     * @param fromPosition The position to measure from.
+     * @return The unwrapped position of the page at most half a round away.
+     */
+    private int getNearestCircularPage(final int page, final int fromPosition) {
+        final int pageCount = getPageCount();
+        int distance = PagerPhysics.wrapPage(page - fromPosition, pageCount);
+        if (distance > pageCount / 2) {
+            distance -= pageCount;
+        }
+        return fromPosition + distance;
+    }
+
+    /**
+     * Returns the first page of a window of pages around the visible ones.
+     *
+     * @param firstVisiblePage The first visible page.
+     * @param lastVisiblePage The last visible page.
+     * @param margin How many pages to add on either side.
+     * @return The first page position of the window.
+     */
+    private int getWindowFirstPage(final int firstVisiblePage, final int lastVisiblePage,
+            final int margin) {
+        if (isCircularPaging()) {
+            // At most one round wide, so no page would be needed in two places at once
+            return Math.max(firstVisiblePage - margin, lastVisiblePage - getPageCount() + 1);
+        }
+        return Math.max(0, firstVisiblePage - margin);
+    }
+
+    /**
+     * Returns the last page of a window of pages around the visible ones.
+     *
+     * @param windowFirstPage The window's first page, from
+     *            {@link #getWindowFirstPage(int, int, int)}.
+     * @param lastVisiblePage The last visible page.
+     * @param margin How many pages to add after the visible ones.
+     * @return The last page position of the window.
+     */
+    private int getWindowLastPage(final int windowFirstPage, final int lastVisiblePage,
+            final int margin) {
+        if (isCircularPaging()) {
+            return Math.min(lastVisiblePage + margin, windowFirstPage + getPageCount() - 1);
+        }
+        return Math.min(getPageCount() - 1, lastVisiblePage + margin);
+    }
+
+    /**
+     * Returns whether a page is in a window, at any of its unwrapped positions in circular mode.
+     *
+     * @param position The page position.
+     * @param firstPage The window's first page.
+     * @param lastPage The window's last page.
+     * @return True if the window shows the page.
+     */
+    private boolean isInWindow(final int position, final int firstPage, final int lastPage) {
+        if (isCircularPaging()) {
+            return PagerPhysics.wrapPage(position - firstPage, getPageCount())
+                    <= lastPage - firstPage;
+        }
+        return position >= firstPage && position <= lastPage;
+    }
+
+    /**
+     * Settles circular paging on an unwrapped page: makes its wrapped page the current screen and
+     * moves the scroll position back by whole rounds to that page's own round, laying out the
+     * pages in view at their new positions.
+     *
+     * @param position The unwrapped page the snap ended on.
+     */
+    private void settleCircularScroll(final int position) {
+        mCurrentScreen = toPage(position);
+        final int shift = getPageOffset(mCurrentScreen) - getPageOffset(position);
+        if (shift == 0) {
+            return;
+        }
+
+        scrollBy(shift, 0);
+        final int width = getWidth();
+        final int lastVisiblePage = getLastVisiblePage(width);
+        final int firstPage = getWindowFirstPage(getFirstVisiblePage(width), lastVisiblePage,
+                MEASURE_PREFETCH_PAGES);
+        final int lastPage = getWindowLastPage(firstPage, lastVisiblePage, MEASURE_PREFETCH_PAGES);
+        for (int page = firstPage; page <= lastPage; page++) {
+            layoutPage(page, false);
+        }
+    }
+
+    /**
+     * Returns the page geometry, first rebuilding it if the pager width or the page count changed
+     * since it was last built.
+     *
+     * @return The page offset index.
+     */
+    private PageOffsetIndex getPageOffsets() {
+        final int width = getMeasuredWidth();
+        final int count = getPageCount();
+        if (width != mPageOffsetsWidth || count != mPageOffsets.getPageCount()) {
+            mPageOffsetsWidth = width;
+            if (mAdapter == null) {
+                mPageOffsets.setUniform(count, width);
+            } else {
+                if (mPageWidths.length < count) {
+                    mPageWidths = new int[count];
+                }
+                for (int position = 0; position < count; position++) {
+                    mPageWidths[position] = computePageWidth(position, width);
+                }
+                mPageOffsets.setWidths(mPageWidths, count);
+            }
+        }
+        return mPageOffsets;
+    }
+
+    /**
+     * Returns the width in pixels of an adapter page.
+     *
+     * @param position The page position.
+     * @param width The pager width.
+     * @return The page width; at least 1 pixel once the pager has a width.
+     */
+    private int computePageWidth(final int position, final int width) {
+        if (width <= 0) {
+            return 0;
+        }
+        return Math.max(1, Math.round(mAdapter.getPageWidth(position) * width));
+    }
+
+    /**
+     * Returns the first page that is at least partly in view at the current scroll position.
+     *
+     * @param width The pager width to assume.
+     * @return The page position; the current screen before the first layout.
+     */
+    private int getFirstVisiblePage(final int width) {
+        if (width <= 0 || mFirstLayout) {
+            return mCurrentScreen;
+        }
+        return getPageAtOffset(getScrollX());
+    }
+
+    /**
+     * Returns the last page that is at least partly in view at the current scroll position.
+     *
+     * @param width The pager width to assume.
+     * @return The page position; the current screen before the first layout.
+     */
+    private int getLastVisiblePage(final int width) {
+        if (width <= 0 || mFirstLayout) {
+            return mCurrentScreen;
+        }
+        return getPageAtOffset(isCircularPaging() ? getScrollX() + width - 1
+                : Math.max(0, getScrollX()) + width - 1);
+    }
+
+    /**
+     * Measures a page to its page width and the pager's height if it isn't measured for them
+     * already.
+     *
+     * @param position The page position.
+     * @param height The pager height.
+     * @param force True to measure even if the page's size and layout are up to date.
+     * @return True if the page was measured.
+     */
+    private boolean measurePage(final int position, final int height, final boolean force) {
+        final View page = getPageView(toPage(position));
+        if (page == null || page.getVisibility() == View.GONE) {
+            return false;
+        }
+        final int width = getPageOffsets().getPageWidth(toPage(position));
+        if (force || page.isLayoutRequested() || page.getMeasuredWidth() != width
+                || page.getMeasuredHeight() != height) {
+            page.measure(MeasureSpec.makeMeasureSpec(width, MeasureSpec.EXACTLY),
+                    MeasureSpec.makeMeasureSpec(height, MeasureSpec.EXACTLY));
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Lays out a page at its offset if it moved or requested a layout.
+     *
+     * @param position The page position; unwrapped in circular mode, which decides the round the
+     *            page is laid out in.
+     * @param force True to lay the page out even if it looks up to date.
+     */
+    private void layoutPage(final int position, final boolean force) {
+        final View page = getPageView(toPage(position));
+        if (page == null || page.getVisibility() == View.GONE) {
+            return;
+        }
+        final int pageLeft = getPageOffset(position);
+        if (force || page.isLayoutRequested() || page.getLeft() != pageLeft
+                || page.getWidth() != page.getMeasuredWidth()) {
+            page.layout(pageLeft, 0, pageLeft + page.getMeasuredWidth(), page.getMeasuredHeight());
+            if (mSnapshotCache != null) {
+                mSnapshotCache.invalidate(toPage(position));
+            }
+        }
+    }
+
+    /**
+     * Measures and lays out the pages about to scroll into view that onMeasure/onLayout skipped,
+     * without requesting a layout of the whole pager.
+     */
+    private void preparePagesInView() {
+        final int width = getMeasuredWidth();
+        final int height = getMeasuredHeight();
+        if (width <= 0 || mFirstLayout) {
+            return;
+        }
+
+        final int lastVisiblePage = getLastVisiblePage(width);
+        final int firstPage = getWindowFirstPage(getFirstVisiblePage(width), lastVisiblePage,
+                MEASURE_PREFETCH_PAGES);
+        final int lastPage = getWindowLastPage(firstPage, lastVisiblePage, MEASURE_PREFETCH_PAGES);
+        for (int position = firstPage; position <= lastPage; position++) {
+            if (measurePage(position, height, false)) {
+                layoutPage(position, true);
+            }
+        }
+    }
+
+    /**
+     * Returns whether the pages are moving, from a drag or a snap animation.
+     *
+     * @return True while horizontally dragging or animating.
+     */
+    private boolean isPageMotionInProgress() {
+        return mTouchState == TOUCH_STATE_HORIZONTAL_SCROLLING || !mScroller.isFinished();
+    }
+
+    /**
+     * Applies the drag deltas accumulated by coalesced MOVE events, if any.
+     */
+    private void applyPendingDrag() {
+        if (mPendingDragDeltaX != 0) {
+            final int deltaX = mPendingDragDeltaX;
+            mPendingDragDeltaX = 0;
+            scrollBy(deltaX, 0);
+        }
+    }
+
+    /**
+     * Tells the scroll progress listeners which page the left edge of the viewport is on and how
+     * far into it.
+     */
+    private void dispatchPageScrolled() {
+        mPageScrollDirty = false;
+        final int width = getWidth();
+        if (width <= 0) {
+            return;
+        }
+
+        final int position = getFirstVisiblePage(width);
+        final int page = toPage(position);
+        final int offsetPixels = getScrollX() - getPageOffset(position);
+        final float offset = offsetPixels / (float) getPageOffsets().getPageWidth(page);
+        final OnPageScrollListener[] listeners = mPageScrollListeners;
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].onPageScrolled(page, offset, offsetPixels);
+        }
+    }
+
+    /**
+     * Feeds a MOVE event, historical samples included, to the axis arbitration and takes over the
+     * gesture if it turns out horizontal and this pager can move that way. Otherwise the gesture
+     * is left to the children, or to an enclosing pager, and arbitration starts over from here.
+     *
+     * @param ev The MOVE event.
+     * @return True if the gesture is now a horizontal drag of this pager.
+     */
+    private boolean arbitrateTouchAxis(final MotionEvent ev) {
+        final int historySize = ev.getHistorySize();
+        for (int i = 0; i < historySize; i++) {
+            mAxisArbiter.addSample(ev.getHistoricalX(i), ev.getHistoricalY(i),
+                    ev.getHistoricalEventTime(i));
+        }
+        final int axis = mAxisArbiter.addEvent(ev.getX(), ev.getY(), ev.getEventTime());
+        if (axis == TouchAxisArbiter.AXIS_UNDECIDED) {
+            return false;
+        }
+        if (mMetricsListener != null) {
+            mMetricsListener.onTouchAxisDecided(axis == TouchAxisArbiter.AXIS_HORIZONTAL,
+                    mAxisArbiter.getDecisionEvents(), mAxisArbiter.getSampleCount());
+        }
+
+        // Dragging towards later pages moves the finger to the left
+        final int direction = mAxisArbiter.getDeltaX() > 0 ? -1 : 1;
+        if (axis == TouchAxisArbiter.AXIS_HORIZONTAL && canDragTowards(direction)
+                && !canChildDragTowards(this, direction, (int) ev.getX() + getScrollX(),
+                        (int) ev.getY() + getScrollY())) {
+            claimHorizontalDrag(ev.getX());
+            return true;
+        }
+        mTouchState = TOUCH_STATE_VERTICAL_SCROLLING;
+        mAxisArbiter.restart(ev.getX(), ev.getY(), ev.getEventTime());
+        return false;
+    }
+
+    /**
+     * Starts a horizontal drag and keeps enclosing views, e.g. an outer pager, from intercepting
+     * the rest of the gesture.
+     *
+     * @param x The x coordinate the drag starts from.
+     */
+    private void claimHorizontalDrag(final float x) {
+        mTouchState = TOUCH_STATE_HORIZONTAL_SCROLLING;
+        mLastMotionX = x;
+        final ViewParent parent = getParent();
+        if (parent != null) {
+            parent.requestDisallowInterceptTouchEvent(true);
+        }
+    }
+
+    /**
+     * Returns whether a drag can move the pages in a direction, i.e. the pager isn't at that edge.
+     *
+     * @param direction Positive for later pages, negative for earlier ones.
+     * @return True if a drag would scroll.
+     */
+    private boolean canDragTowards(final int direction) {
+        return isCircularPaging() || PagerPhysics.clampDragDelta(getScrollX() + mPendingDragDeltaX,
+                direction, getPageOffsets()) != 0;
+    }
+
+    /**
+     * Returns whether a pager nested under a point can be dragged in a direction, in which case
+     * the drag is left to it.
+     *
+     * @param group The view group to look in.
+     * @param direction Positive for later pages, negative for earlier ones.
+     * @param x The x coordinate, in the group's scrolled coordinates.
+     * @param y The y coordinate, in the group's scrolled coordinates.
+     * @return True if a nested pager can be dragged.
+     */
+    private static boolean canChildDragTowards(final ViewGroup group, final int direction,
+            final int x, final int y) {
+        for (int i = group.getChildCount() - 1; i >= 0; i--) {
+            final View child = group.getChildAt(i);
+            if (child.getVisibility() != View.VISIBLE || x < child.getLeft()
+                    || x >= child.getRight() || y < child.getTop() || y >= child.getBottom()) {
+                continue;
+            }
+            if (child instanceof HorizontalPager
+                    && ((HorizontalPager) child).canDragTowards(direction)) {
+                return true;
+            }
+            if (child instanceof ViewGroup && canChildDragTowards((ViewGroup) child, direction,
+                    x - child.getLeft() + child.getScrollX(),
+                    y - child.getTop() + child.getScrollY())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Keeps the pages in view on hardware layers while the pages move, and releases the layers of
+     * pages that left the view or once the motion is over.
+     */
+    private void updatePageLayers() {
+        final int width = getWidth();
+        final boolean moving = mPromotePagesToLayers && width > 0 && !mFirstLayout
+                && mSnapshotCache == null && isPageMotionInProgress()
+                && PageLayerPromoter.canPromote(this);
+        if (!moving && mLayerPromoter.size() == 0) {
+            return;
+        }
+
+        final long now = System.nanoTime();
+        int firstPage = 0;
+        int lastPage = -1;
+        if (moving) {
+            firstPage = getFirstVisiblePage(width);
+            lastPage = getWindowLastPage(firstPage, getLastVisiblePage(width), 0);
+        }
+        for (int i = mLayerPromoter.size() - 1; i >= 0; i--) {
+            if (!moving || !isInWindow(mLayerPromoter.pageAt(i), firstPage, lastPage)) {
+                releasePageLayer(i, now);
+            }
+        }
+        for (int position = firstPage; position <= lastPage; position++) {
+            final View page = getPageView(toPage(position));
+            if (page != null && page.getVisibility() == View.VISIBLE) {
+                mLayerPromoter.promote(toPage(position), page, now);
+            }
+        }
+    }
+
+    /**
+     * Takes a page off its hardware layer and reports how long the layer was live.
+     *
+     * @param index The page's index in the layer promoter.
+     * @param nowNanos The current time.
+     */
+    private void releasePageLayer(final int index, final long nowNanos) {
+        final int page = mLayerPromoter.pageAt(index);
+        final long liveNanos = mLayerPromoter.release(index, nowNanos);
+        if (mMetricsListener != null) {
+            mMetricsListener.onPageLayerReleased(page, liveNanos);
+        }
+    }
+
+    /**
+     * Takes every promoted page off its hardware layer.
+     */
+    private void releasePageLayers() {
+        if (mLayerPromoter == null) {
+            return;
+        }
+        final long now = System.nanoTime();
+        for (int i = mLayerPromoter.size() - 1; i >= 0; i--) {
+            releasePageLayer(i, now);
+        }
+    }
+
+    /**
+     * Records a handled touch event in the gesture trace.
+     *
+     * @param route Where the event went.
+     * @param ev The event.
+     * @param handled What the handler returned.
+     */
+    private void recordTouchEvent(final int route, final MotionEvent ev, final boolean handled) {
+        try {
+            final int historySize = ev.getHistorySize();
+            for (int i = 0; i < historySize; i++) {
+                mGestureTrace.writeSample(ev.getHistoricalEventTime(i), ev.getHistoricalX(i),
+                        ev.getHistoricalY(i));
+            }
+            mGestureTrace.writeEvent(route, ev.getAction(), ev.getEventTime(), ev.getX(),
+                    ev.getY(), handled, getScrollX() + mPendingDragDeltaX);
+        } catch (final IOException e) {
+            abortGestureTrace(e);
+        }
+    }
+
+    /**
+     * Records the release of a horizontal drag in the gesture trace.
+     *
+     * @param velocityX The release velocity.
+     * @param targetPage The page to settle on.
+     */
+    private void recordRelease(final int velocityX, final int targetPage) {
+        try {
+            mGestureTrace.writeRelease(velocityX, getScrollX(), targetPage);
+        } catch (final IOException e) {
+            abortGestureTrace(e);
+        }
+    }
+
+    /**
+     * Records a snap animation frame or a screen switch in the gesture trace.
+     *
+     * @param record {@link GestureTrace#RECORD_FRAME} or {@link GestureTrace#RECORD_SWITCH}.
+     * @param frameTimeNanos The frame time.
+     * @param value The frame's scroll position, or the new screen.
+     */
+    private void recordAnimationStep(final int record, final long frameTimeNanos,
+            final int value) {
+        final long frameTimeMillis = frameTimeNanos / 1000000L;
+        try {
+            if (record == GestureTrace.RECORD_FRAME) {
+                mGestureTrace.writeFrame(frameTimeMillis, value);
+            } else {
+                mGestureTrace.writeSwitch(frameTimeMillis, value);
+            }
+        } catch (final IOException e) {
+            abortGestureTrace(e);
+        }
+    }
+
+    /**
+     * Stops recording after a write failed, keeping the failure for {@link #stopGestureTrace()}.
+     *
+     * @param e The failure.
+     */
+    private void abortGestureTrace(final IOException e) {
+        final GestureTrace.Writer trace = mGestureTrace;
+        mGestureTrace = null;
+        mGestureTraceError = e;
+        try {
+            trace.close();
+        } catch (final IOException closeError) {
+            // Already failed; the first error is the one to report
+        }
+    }
+
+    /**
+     * Tells the page lifecycle listener about the pages that scrolled into view, out of view, or
+     * from partly to fully in view (or back) since the last call.
+     */
+    private void dispatchPageVisibility() {
+        final int width = getWidth();
+        if (width <= 0 || mFirstLayout) {
+            return;
+        }
+
+        final int scrollX = getScrollX();
+        final int firstPage = getFirstVisiblePage(width);
+        final int lastPage = getWindowLastPage(firstPage, getLastVisiblePage(width), 0);
+        for (int i = mPageVisibilities.size() - 1; i >= 0; i--) {
+            final int page = mPageVisibilities.keyAt(i);
+            if (!isInWindow(page, firstPage, lastPage)) {
+                mPageVisibilities.delete(page);
+                mPageLifecycleListener.onPageHidden(page, getPageView(page));
+            }
+        }
+        for (int position = firstPage; position <= lastPage; position++) {
+            final int page = toPage(position);
+            final int pageLeft = getPageOffset(position);
+            final int pageRight = pageLeft + getPageOffsets().getPageWidth(page);
+            final int visibility = pageLeft >= scrollX && pageRight <= scrollX + width
+                    ? PAGE_VISIBLE : PAGE_PARTIALLY_VISIBLE;
+            if (mPageVisibilities.get(page, PAGE_HIDDEN) != visibility) {
+                mPageVisibilities.put(page, visibility);
+                if (visibility == PAGE_VISIBLE) {
+                    mPageLifecycleListener.onPageVisible(page, getPageView(page));
+                } else {
+                    mPageLifecycleListener.onPagePartiallyVisible(page, getPageView(page));
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts following a driver: drops any drag or snap of this pager's own and moves to the
+     * driver's position.
+     *
+     * @param driver The driving pager.
+     */
+    private void startFollowing(final HorizontalPager driver) {
+        mDriver = driver;
+        applyPendingDrag();
+        mTouchState = TOUCH_STATE_REST;
+        if (!mScroller.isFinished()) {
+            mScroller.forceFinished(true);
+        }
+        mNextScreen = INVALID_SCREEN;
+        followSettle(driver.mCurrentScreen, false);
+        driver.scrollFollowers();
+    }
+
+    /**
+     * Maps this pager's scroll position onto its followers.
+     */
+    private void scrollFollowers() {
+        if (getWidth() <= 0 || getPageCount() == 0) {
+            return;
+        }
+        final int scrollX = getScrollX();
+        final int page = getPageAtOffset(scrollX);
+        final int pageWidth = getPageOffsets().getPageWidth(toPage(page));
+        final float fraction =
+                pageWidth > 0 ? (scrollX - getPageOffset(page)) / (float) pageWidth : 0;
+        for (int i = 0; i < mFollowers.length; i++) {
+            mFollowers[i].followScroll(page, fraction);
+        }
+    }
+
+    /**
+     * Scrolls to the same point the driver is at, page by page.
+     *
+     * @param page The driver's page at its scroll position; unwrapped in circular mode.
+     * @param fraction How far into that page the driver is scrolled, between 0 and 1.
+     */
+    private void followScroll(final int page, final float fraction) {
+        final int pageCount = getPageCount();
+        if (mFirstLayout || getWidth() <= 0 || pageCount == 0) {
+            // The first layout scrolls to the current screen followSettle set
+            return;
+        }
+        final int scrollX;
+        if (isCircularPaging()) {
+            final int pageWidth = getPageOffsets().getPageWidth(PagerPhysics.wrapPage(page,
+                    pageCount));
+            scrollX = getPageOffset(page) + Math.round(fraction * pageWidth);
+        } else if (page < 0 || page >= pageCount) {
+            // The driver is on a page this pager doesn't have; wait at the nearest one
+            scrollX = getPageOffset(PagerPhysics.clampPage(page, pageCount));
+        } else {
+            scrollX = getPageOffset(page)
+                    + Math.round(fraction * getPageOffsets().getPageWidth(page));
+        }
+        if (scrollX != getScrollX()) {
+            scrollTo(scrollX, 0);
+        }
+    }
+
+    /**
+     * Comes to rest on the screen the driver settled on, the way a settling snap would.
+     *
+     * @param screen The driver's new screen.
+     * @param notify True to notify the screen switch listeners, as the driver did.
+     */
+    private void followSettle(final int screen, final boolean notify) {
+        final int pageCount = getPageCount();
+        if (pageCount == 0) {
+            return;
+        }
+        mCurrentScreen = isCircularPaging() ? PagerPhysics.wrapPage(screen, pageCount)
+                : PagerPhysics.clampPage(screen, pageCount);
+        if (!mFirstLayout) {
+            // Also moves the scroll position back into the screen's own round in circular mode
+            scrollTo(getPageOffset(mCurrentScreen), 0);
+        }
+        populatePages();
+
+        if (notify) {
+            mScreenSwitchDispatcher.dispatchScreenSwitched(mCurrentScreen);
+        }
+        if (mSnapshotCache != null) {
+            scheduleSnapshotCapture();
+        }
+        if (mPageLifecycleListener != null && getWidth() > 0) {
+            dispatchPageSettled();
+        }
+        for (int i = 0; i < mFollowers.length; i++) {
+            mFollowers[i].followSettle(mCurrentScreen, notify);
+        }
+    }
+
+    /**
+     * Tells the page lifecycle listener that the pager came to rest on the current screen.
+     */
+    private void dispatchPageSettled() {
+        dispatchPageVisibility();
+        mPageLifecycleListener.onPageSettled(mCurrentScreen, getPageView(mCurrentScreen));
+    }
+
+    /**
+     * Moves the tracked page visibilities along with an incremental adapter update. Pages that
+     * were removed or changed are dropped without a hidden callback; their views are recycled
+     * through {@link PageAdapter#recyclePage(View, int)}, and changed pages are reported again
+     * once they are bound.
+     *
+     * @param update The kind of update.
+     * @param start The first position the update affects (the source of a move).
+     * @param argument The number of pages, or the target position of a move.
+     */
+    private void remapPageVisibilities(final int update, final int start, final int argument) {
+        final int count = mPageVisibilities.size();
+        if (count == 0) {
+            return;
+        }
+        final int[] pages = new int[count];
+        final int[] visibilities = new int[count];
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            final int page = mPageVisibilities.keyAt(i);
+            final int newPage = mapPosition(page, update, start, argument);
+            final boolean changed = update == UPDATE_CHANGE && page >= start
+                    && page < start + argument;
+            if (newPage != INVALID_SCREEN && !changed) {
+                pages[kept] = newPage;
+                visibilities[kept] = mPageVisibilities.valueAt(i);
+                kept++;
+            }
+        }
+        mPageVisibilities.clear();
+        for (int i = 0; i < kept; i++) {
+            mPageVisibilities.put(pages[i], visibilities[i]);
+        }
+    }
+
+    /**
+     * Returns how many pages apart two pages are, the shorter way around in circular mode.
+     *
+     * @param page One page.
+     * @param otherPage The other page.
+     * @return The distance in pages.
+     */
+    private int getPageDistance(final int page, final int otherPage) {
+        final int distance = Math.abs(page - otherPage);
+        return isCircularPaging() ? Math.min(distance, getPageCount() - distance) : distance;
+    }
+
+    /**
+     * Reports the interval since the previous frame of the running snap animation.
+     *
+     * @param now The current frame time.
+     */
+    private void recordAnimationFrame(final long now) {
+        if (mLastAnimationFrameNanos != 0) {
+            final long frameIntervalNanos = now - mLastAnimationFrameNanos;
+            final boolean overBudget = frameIntervalNanos > mFrameBudgetNanos;
+            mAnimationFrameCount++;
+            if (overBudget) {
+                mAnimationFramesOverBudget++;
+            }
+            mMetricsListener.onAnimationFrame(frameIntervalNanos, overBudget);
+        }
+        mLastAnimationFrameNanos = now;
+    }
+
+    /**
+     * Reports the finished snap animation and, if a drag release started it, the time from the
+     * release to the screen switch.
+     */
+    private void reportSettled() {
+        mMetricsListener.onAnimationFinished(mAnimationFrameCount, mAnimationFramesOverBudget);
+        if (mReleaseNanos != 0) {
+            mMetricsListener.onReleaseToScreenSwitch(mCurrentScreen,
+                    System.nanoTime() - mReleaseNanos);
+            mReleaseNanos = 0;
+        }
+        mLastAnimationFrameNanos = 0;
+    }
+
+    /**
+     * Captures snapshots of the settled pages once the current frame is done.
+     */
+    private void scheduleSnapshotCapture() {
+        removeCallbacks(mCaptureSnapshotsRunnable);
+        post(mCaptureSnapshotsRunnable);
+    }
+
+    /**
+     * Snapshots the current page and its neighbors (the pages a drag reveals first) if they don't
+     * have an up to date snapshot yet.
+     */
+    private void captureSettledSnapshots() {
+        if (mSnapshotCache == null || isPageMotionInProgress()) {
+            return;
+        }
+        final int firstPage = getWindowFirstPage(mCurrentScreen, mCurrentScreen, 1);
+        final int lastPage = getWindowLastPage(firstPage, mCurrentScreen, 1);
+        for (int position = firstPage; position <= lastPage; position++) {
+            capturePageSnapshot(toPage(position));
+        }
+    }
+
+    /**
+     * Renders a laid out page into a bitmap and stores it in the snapshot cache.
+     *
+     * @param position The page position.
+     */
+    private void capturePageSnapshot(final int position) {
+        final View page = getPageView(position);
+        if (page == null || page.getVisibility() != View.VISIBLE || page.isLayoutRequested()
+                || mSnapshotCache.contains(position)) {
+            return;
+        }
+        final int width = page.getWidth();
+        final int height = page.getHeight();
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+
+        final Bitmap snapshot;
+        try {
+            snapshot = mSnapshotCache.obtainBitmap(width, height);
+        } catch (final OutOfMemoryError e) {
+            // Snapshots are only an optimization; keep drawing this page live
+            return;
+        }
+        snapshot.eraseColor(0);
+        mSnapshotCanvas.setBitmap(snapshot);
+        // As drawChild does, show the part of a scrolled page (e.g. a ScrollView) that is in view
+        final int saveCount = mSnapshotCanvas.save();
+        mSnapshotCanvas.translate(-page.getScrollX(), -page.getScrollY());
+        page.draw(mSnapshotCanvas);
+        mSnapshotCanvas.restoreToCount(saveCount);
+        mSnapshotCache.put(position, snapshot);
+    }
+
+    /**
+     * Attaches adapter pages around the visible pages and the screen being snapped to, and recycles
+     * attached pages that are no longer in that window. Does nothing without an adapter or while
+     * the window is unchanged.
+     */
+    private void populatePages() {
+        if (mAdapter == null || mInPopulate) {
+            return;
+        }
+
+        final int width = getWidth();
+        final int lastVisiblePage = getLastVisiblePage(width);
+        final int firstPage = getWindowFirstPage(getFirstVisiblePage(width), lastVisiblePage,
+                mOffscreenPageLimit);
+        final int lastPage = getWindowLastPage(firstPage, lastVisiblePage, mOffscreenPageLimit);
+
+        if (firstPage == mPopulatedFirstPage && lastPage == mPopulatedLastPage
+                && mNextScreen == mPopulatedNextScreen) {
+            return;
+        }
+        mPopulatedFirstPage = firstPage;
+        mPopulatedLastPage = lastPage;
+        mPopulatedNextScreen = mNextScreen;
+
+        // A page being snapped to keeps its own window, so a long snap doesn't attach every page
+        // in between
+        int firstNextPage = 0;
+        int lastNextPage = -1;
+        if (mNextScreen != INVALID_SCREEN) {
+            firstNextPage = getWindowFirstPage(mNextScreen, mNextScreen, mOffscreenPageLimit);
+            lastNextPage = getWindowLastPage(firstNextPage, mNextScreen, mOffscreenPageLimit);
+        }
+
+        mInPopulate = true;
+        for (int i = mActivePages.size() - 1; i >= 0; i--) {
+            final int position = mActivePages.keyAt(i);
+            if (!isInWindow(position, firstPage, lastPage)
+                    && (lastNextPage < firstNextPage
+                            || !isInWindow(position, firstNextPage, lastNextPage))) {
+                recyclePage(i);
+            }
+        }
+        for (int position = firstPage; position <= lastPage; position++) {
+            attachPage(position);
+        }
+        for (int position = firstNextPage; position <= lastNextPage; position++) {
+            // In circular mode, a page already in view stays where it is
+            if (!isInWindow(position, firstPage, lastPage)) {
+                attachPage(position);
+            }
+        }
+        mInPopulate = false;
+    }
+
+    /**
+     * Attaches the adapter page for a position if it isn't attached already, reusing a recycled
+     * page of the same view type where possible. Once the pager has been laid out, the page is
+     * measured and laid out directly instead of requesting a layout of the whole pager.
+     *
+     * @param layoutPosition The page position to lay the page out at; unwrapped in circular mode.
+     */
+    private void attachPage(final int layoutPosition) {
+        final int position = toPage(layoutPosition);
+        if (mActivePages.get(position) != null) {
+            return;
+        }
+
+        final int viewType;
+        View page = mPreparedPages.get(position);
+        if (page != null) {
+            // Created and bound ahead of time by the prefetcher
+            viewType = mPreparedPageTypes.get(position);
+            mPreparedPages.remove(position);
+            mPreparedPageTypes.delete(position);
+        } else {
+            viewType = mAdapter.getItemViewType(position);
+            page = mRecycler.getScrapPage(viewType);
+            if (page == null) {
+                page = mAdapter.createPage(this, viewType);
+            }
+            mAdapter.bindPage(page, position, null);
+        }
+
+        LayoutParams params = page.getLayoutParams();
+        if (params == null) {
+            params = generateDefaultLayoutParams();
+        }
+        addViewInLayout(page, -1, params, true);
+        mActivePages.put(position, page);
+        mActivePageTypes.put(position, viewType);
+
+        if (getWidth() > 0) {
+            measurePage(position, getHeight(), true);
+            layoutPage(layoutPosition, true);
+        }
+    }
+
+    /**
+     * Points the prefetcher at the pages ahead of the visible ones in a paging direction.
+     *
+     * @param direction 1 if paging towards later pages, -1 if towards earlier ones.
+     */
+    private void prefetchInDirection(final int direction) {
+        final int width = getWidth();
+        final int fromPage =
+                toPage(direction > 0 ? getLastVisiblePage(width) : getFirstVisiblePage(width));
+        mPrefetchDirection = direction;
+        mPrefetcher.update(fromPage, direction, getPageCount(), isCircularPaging());
+        recycleStalePreparedPages();
+    }
+
+    /**
+     * Creates (or reuses) and binds the view for a page whose data was prefetched, so attaching it
+     * later is cheap. Skipped if the page got attached in the meantime.
+     *
+     * @param position The page position.
+     * @param data The prefetched data.
+     */
+    private void preparePage(final int position, final Object data) {
+        if (mAdapter == null || mActivePages.get(position) != null
+                || mPreparedPages.get(position) != null) {
+            return;
+        }
+
+        final int viewType = mAdapter.getItemViewType(position);
+        View page = mRecycler.getScrapPage(viewType);
+        if (page == null) {
+            page = mAdapter.createPage(this, viewType);
+        }
+        mAdapter.bindPage(page, position, data);
+        mPreparedPages.put(position, page);
+        mPreparedPageTypes.put(position, viewType);
+    }
+
+    /**
+     * Recycles prepared pages that are no longer in the prefetch range.
+     */
+    private void recycleStalePreparedPages() {
+        for (int i = mPreparedPages.size() - 1; i >= 0; i--) {
+            if (!mPrefetcher.isInRange(mPreparedPages.keyAt(i))) {
+                recyclePreparedPage(i);
+            }
+        }
+    }
+
+    /**
+     * Recycles every prepared page.
+     */
+    private void recyclePreparedPages() {
+        for (int i = mPreparedPages.size() - 1; i >= 0; i--) {
+            recyclePreparedPage(i);
+        }
+    }
+
+    /**
+     * Returns a prepared, never attached page to the recycle pool.
+     *
+     * @param index The page's index in {@link #mPreparedPages}.
+     */
+    private void recyclePreparedPage(final int index) {
+        final int position = mPreparedPages.keyAt(index);
+        final View page = mPreparedPages.valueAt(index);
+        final int viewType = mPreparedPageTypes.get(position);
+
+        mPreparedPages.removeAt(index);
+        mPreparedPageTypes.delete(position);
+        mAdapter.recyclePage(page, position);
+        mRecycler.addScrapPage(viewType, page);
+    }
+
+    /**
+     * Detaches an attached adapter page and returns it to the recycle pool.
+     *
+     * @param index The page's index in {@link #mActivePages}.
+     */
+    private void recyclePage(final int index) {
+        final int position = mActivePages.keyAt(index);
+        final View page = mActivePages.valueAt(index);
+        final int viewType = mActivePageTypes.get(position);
+
+        if (mLayerPromoter != null) {
+            final int layerIndex = mLayerPromoter.indexOf(position);
+            if (layerIndex >= 0) {
+                releasePageLayer(layerIndex, System.nanoTime());
+            }
+        }
+        mActivePages.removeAt(index);
+        mActivePageTypes.delete(position);
+        removeViewInLayout(page);
+        mAdapter.recyclePage(page, position);
+        mRecycler.addScrapPage(viewType, page);
+    }
+
+    /**
+     * Recycles every attached adapter page.
+     */
+    private void recycleAllPages() {
+        for (int i = mActivePages.size() - 1; i >= 0; i--) {
+            recyclePage(i);
+        }
+    }
+
+    /**
+     * Forgets the last populated window, so the next {@link #populatePages()} recomputes it.
+     */
+    private void resetPopulatedWindow() {
+        mPopulatedFirstPage = INVALID_SCREEN;
+        mPopulatedLastPage = INVALID_SCREEN;
+        mPopulatedNextScreen = INVALID_SCREEN;
+    }
+
+    /**
+     * Rebinds all pages after {@link PageAdapter#notifyDataSetChanged()}, keeping the current
+     * screen if it still exists.
+     */
+    private void onAdapterDataSetChanged() {
+        recycleAllPages();
+        recyclePreparedPages();
+        if (mPrefetcher != null) {
+            mPrefetcher.cancelAll();
+        }
+        if (mSnapshotCache != null) {
+            mSnapshotCache.clear();
+        }
+        // Every page was recycled and may come back as a different one
+        mPageVisibilities.clear();
+        mPageOffsetsWidth = -1;
+        mPageUpdatesPending = false;
+
+        final int lastPage = Math.max(0, mAdapter.getCount() - 1);
+        mCurrentScreen = Math.min(mCurrentScreen, lastPage);
+        if (mCircular && mNextScreen != INVALID_SCREEN) {
+            // Unwrapped for the old page count; settle where we are instead
+            mScroller.forceFinished(true);
+            mNextScreen = INVALID_SCREEN;
+        }
+        if (mNextScreen != INVALID_SCREEN) {
+            mNextScreen = Math.min(mNextScreen, lastPage);
+        }
+        if (mScroller.isFinished() && getScrollX() != getPageOffset(mCurrentScreen)) {
+            scrollTo(getPageOffset(mCurrentScreen), 0);
+        }
+
+        resetPopulatedWindow();
+        if (mRestoredScreen != INVALID_SCREEN && getPageCount() > 0) {
+            restoreScreen(mRestoredScreen);
+        }
+        populatePages();
+        requestLayout();
+    }
+
+    /**
+     * Records an incremental adapter update: attached pages follow their data to the new
+     * positions (removed and changed ones are recycled) and the current screen follows its page.
+     * Scrolling and layout wait for {@link #applyPageUpdates()} on the next frame, so a batch of
+     * updates costs one geometry rebuild and one layout of the pages that moved.
+     *
+     * @param update The kind of update.
+     * @param position The first position the update affects (the source of a move).
+     * @param argument The number of pages, or the target position of a move.
+     */
+    private void onPagesUpdated(final int update, final int position, final int argument) {
+        // Promoted pages are tracked by position; the next motion frame promotes them again
+        releasePageLayers();
+        if (!mPageUpdatesPending) {
+            mPageUpdatesPending = true;
+            mUpdateOldScreen = mCurrentScreen;
+            mUpdateLayoutFrom = Integer.MAX_VALUE;
+            mUpdateAnchorPage = INVALID_SCREEN;
+            final int width = getMeasuredWidth();
+            // The geometry from before the updates, not rebuilt for the new page count yet
+            final int oldCount = mPageOffsets.getPageCount();
+            if (mCircular && oldCount > 1) {
+                // Work on wrapped pages; the anchor puts the scroll position back in its round
+                if (mNextScreen != INVALID_SCREEN) {
+                    mNextScreen = PagerPhysics.wrapPage(mNextScreen, oldCount);
+                }
+                if (!mFirstLayout && width > 0 && width == mPageOffsetsWidth) {
+                    final int anchorPage = mPageOffsets.getCircularPageAt(getScrollX());
+                    mUpdateAnchorOffset =
+                            getScrollX() - mPageOffsets.getCircularPageOffset(anchorPage);
+                    mUpdateAnchorPage = PagerPhysics.wrapPage(anchorPage, oldCount);
+                }
+            } else if (!mFirstLayout && width > 0 && width == mPageOffsetsWidth) {
+                mUpdateAnchorPage = mPageOffsets.getPageAt(Math.max(0, getScrollX()));
+                mUpdateAnchorOffset = getScrollX() - mPageOffsets.getPageOffset(mUpdateAnchorPage);
+            }
+        }
+        mUpdateLayoutFrom = Math.min(mUpdateLayoutFrom,
+                update == UPDATE_MOVE ? Math.min(position, argument) : position);
+
+        if (mUpdateAnchorPage != INVALID_SCREEN) {
+            final int anchorPage = mapPosition(mUpdateAnchorPage, update, position, argument);
+            if (anchorPage == INVALID_SCREEN) {
+                // The page in view is gone; show the one that took its place
+                mUpdateAnchorPage = position;
+                mUpdateAnchorOffset = 0;
+            } else {
+                mUpdateAnchorPage = anchorPage;
+            }
+        }
+        mCurrentScreen = mapScreen(mCurrentScreen, update, position, argument);
+        if (mNextScreen != INVALID_SCREEN) {
+            mNextScreen = mapScreen(mNextScreen, update, position, argument);
+        }
+
+        recyclePreparedPages();
+        if (mPrefetcher != null) {
+            mPrefetcher.cancelAll();
+        }
+        if (mSnapshotCache != null) {
+            mSnapshotCache.invalidateFrom(mUpdateLayoutFrom);
+        }
+        remapPageVisibilities(update, position, argument);
+
+        final int activeCount = mActivePages.size();
+        final int[] positions = new int[activeCount];
+        final View[] pages = new View[activeCount];
+        final int[] viewTypes = new int[activeCount];
+        int kept = 0;
+        for (int i = activeCount - 1; i >= 0; i--) {
+            final int oldPosition = mActivePages.keyAt(i);
+            final int newPosition = mapPosition(oldPosition, update, position, argument);
+            final boolean changed = update == UPDATE_CHANGE && oldPosition >= position
+                    && oldPosition < position + argument;
+            if (newPosition == INVALID_SCREEN || changed) {
+                recyclePage(i);
+            } else {
+                positions[kept] = newPosition;
+                pages[kept] = mActivePages.valueAt(i);
+                viewTypes[kept] = mActivePageTypes.get(oldPosition);
+                kept++;
+            }
+        }
+        mActivePages.clear();
+        mActivePageTypes.clear();
+        for (int i = 0; i < kept; i++) {
+            mActivePages.put(positions[i], pages[i]);
+            mActivePageTypes.put(positions[i], viewTypes[i]);
+        }
+
+        mPageOffsetsWidth = -1;
+        mFrameScheduler.scheduleFrame();
+    }
+
+    /**
+     * Applies the incremental adapter updates recorded since the last frame: rebuilds the
+     * geometry, keeps the pages in view where they were, re-aims a running snap, attaches pages
+     * that are now in the window and lays out only the attached pages at or after the first
+     * affected position.
+     */
+    private void applyPageUpdates() {
+        mPageUpdatesPending = false;
+        final int lastPage = Math.max(0, getPageCount() - 1);
+        mCurrentScreen = Math.min(mCurrentScreen, lastPage);
+        if (mNextScreen != INVALID_SCREEN) {
+            mNextScreen = Math.min(mNextScreen, lastPage);
+        }
+
+        resetPopulatedWindow();
+        if (mUpdateAnchorPage != INVALID_SCREEN) {
+            final PageOffsetIndex pages = getPageOffsets();
+            final int anchorPage = Math.min(mUpdateAnchorPage, lastPage);
+            int scrollX = pages.getPageOffset(anchorPage) + mUpdateAnchorOffset;
+            if (!isCircularPaging()) {
+                // In circular mode the position may be past the seam in either direction
+                scrollX = Math.max(0, Math.min(pages.getPageOffset(lastPage), scrollX));
+            }
+            if (!mScroller.isFinished()) {
+                mScroller.forceFinished(true);
+                scrollTo(scrollX, 0);
+                final int snapPage = mNextScreen != INVALID_SCREEN ? mNextScreen : mCurrentScreen;
+                snapToScreen(isCircularPaging()
+                        ? getNearestCircularPage(snapPage, anchorPage) : snapPage);
+            } else if (scrollX != getScrollX()) {
+                scrollTo(scrollX, 0);
+            }
+        }
+        populatePages();
+
+        layoutPagesFrom(mUpdateLayoutFrom);
+        invalidate();
+        if (mPageLifecycleListener != null) {
+            dispatchPageVisibility();
+        }
+
+        if (mCurrentScreen != mUpdateOldScreen && mNextScreen == INVALID_SCREEN) {
+            // Same page, new index
+            mScreenSwitchDispatcher.dispatchScreenSwitched(mCurrentScreen);
+        }
+    }
+
+    /**
+     * Measures and lays out the attached pages at or after a page, where they need it. Goes over
+     * the same windows as populatePages, so that in circular mode each page is laid out in the
+     * round it is shown in; there, every page of the window is checked, since a page of a
+     * different width moves the pages of the other rounds as well.
+     *
+     * @param fromPage The first page whose offset or size may have changed.
+     */
+    private void layoutPagesFrom(final int fromPage) {
+        final int width = getWidth();
+        final int height = getMeasuredHeight();
+        final int lastVisiblePage = getLastVisiblePage(width);
+        final int firstPage = getWindowFirstPage(getFirstVisiblePage(width), lastVisiblePage,
+                mOffscreenPageLimit);
+        final int lastPage = getWindowLastPage(firstPage, lastVisiblePage, mOffscreenPageLimit);
+        for (int position = firstPage; position <= lastPage; position++) {
+            if (isCircularPaging() || toPage(position) >= fromPage) {
+                measurePage(position, height, false);
+                layoutPage(position, false);
+            }
+        }
+
+        if (mNextScreen != INVALID_SCREEN) {
+            final int firstNextPage =
+                    getWindowFirstPage(mNextScreen, mNextScreen, mOffscreenPageLimit);
+            final int lastNextPage =
+                    getWindowLastPage(firstNextPage, mNextScreen, mOffscreenPageLimit);
+            for (int position = firstNextPage; position <= lastNextPage; position++) {
+                if (!isInWindow(position, firstPage, lastPage)
+                        && (isCircularPaging() || toPage(position) >= fromPage)) {
+                    measurePage(position, height, false);
+                    layoutPage(position, false);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns where a page is after an incremental update.
+     *
+     * @param position The page's position before the update.
+     * @param update The kind of update.
+     * @param start The first position the update affects (the source of a move).
+     * @param argument The number of pages, or the target position of a move.
+     * @return The page's new position, or {@link #INVALID_SCREEN} if it was removed.
+     */
+    private static int mapPosition(final int position, final int update, final int start,
+            final int argument) {
+        switch (update) {
+            case UPDATE_INSERT:
+                return position >= start ? position + argument : position;
+            case UPDATE_REMOVE:
+                if (position < start) {
+                    return position;
+                }
+                return position < start + argument ? INVALID_SCREEN : position - argument;
+            case UPDATE_MOVE:
+                if (position == start) {
+                    return argument;
+                } else if (start < argument && position > start && position <= argument) {
+                    return position - 1;
+                } else if (argument < start && position >= argument && position < start) {
+                    return position + 1;
+                }
+                return position;
+            default:
+                return position;
+        }
+    }
+
+    /**
+     * Like {@link #mapPosition(int, int, int, int)} for a screen index, which moves to the page
+     * that took its place if its page was removed.
+     *
+     * @param screen The screen index before the update.
+     * @param update The kind of update.
+     * @param start The first position the update affects (the source of a move).
+     * @param argument The number of pages, or the target position of a move.
+     * @return The new screen index.
+     */
+    private static int mapScreen(final int screen, final int update, final int start,
+            final int argument) {
+        final int newScreen = mapPosition(screen, update, start, argument);
+        return newScreen == INVALID_SCREEN ? start : newScreen;
+    }
+
+    /**
+     * Updates the geometry after an adapter page changed its width: measures that page again and
+     * moves the attached pages after it, without a layout of the whole pager. The pages in view
+     * stay in place; a running snap is re-aimed at its screen's new position.
+     *
+     * @param position The page position.
+     */
+    private void onPageWidthChanged(final int position) {
+        final int width = getMeasuredWidth();
+        if (position < 0 || position >= getPageCount() || width != mPageOffsetsWidth) {
+            // Not built for the current size yet; the next rebuild picks the new width up
+            return;
+        }
+
+        final PageOffsetIndex pages = getPageOffsets();
+        final int delta = computePageWidth(position, width) - pages.getPageWidth(position);
+        if (delta == 0) {
+            return;
+        }
+        final boolean beforeViewport = !mFirstLayout && position < getFirstVisiblePage(width);
+        final boolean animating = !mScroller.isFinished();
+        pages.setPageWidth(position, pages.getPageWidth(position) + delta);
+
+        if (beforeViewport) {
+            mScroller.forceFinished(true);
+            scrollBy(delta, 0);
+        }
+        if (animating && (beforeViewport || position < mNextScreen)) {
+            snapToScreen(mNextScreen);
+        }
+
+        measurePage(position, getMeasuredHeight(), false);
+        layoutPagesFrom(position);
+        populatePages();
+        invalidate();
+    }
+
+    /**
+     * The pager's state across configuration changes and process death: the current screen, the
+     * screen a snap was heading to, and how far the pages were scrolled past the current screen.
+     * Only saved for pagers with an id, like any view state.
+     */
+    public static class SavedState extends BaseSavedState {
+        public static final Parcelable.Creator<SavedState> CREATOR =
+                new Parcelable.Creator<SavedState>() {
+                    @Override
+                    public SavedState createFromParcel(final Parcel source) {
+                        return new SavedState(source);
+                    }
+
+                    @Override
+                    public SavedState[] newArray(final int size) {
+                        return new SavedState[size];
+                    }
+                };
+
+        int currentScreen;
+        int nextScreen = INVALID_SCREEN;
+        float scrollFraction;
+
+        SavedState(final Parcelable superState) {
+            super(superState);
+        }
+
+        private SavedState(final Parcel source) {
+            super(source);
+            currentScreen = source.readInt();
+            nextScreen = source.readInt();
+            scrollFraction = source.readFloat();
+        }
+
+        @Override
+        public void writeToParcel(final Parcel dest, final int flags) {
+            super.writeToParcel(dest, flags);
+            dest.writeInt(currentScreen);
+            dest.writeInt(nextScreen);
+            dest.writeFloat(scrollFraction);
+        }
+    }
+
+    /**
+     * Listener for the event that the HorizontalPager switches to a new view.
+     */
+    public static interface OnScreenSwitchListener {
         /**
-         * Notifies listeners about the new screen. Runs after the animation completed.
+         * Notifies listeners about the new screen. Runs after the animation completed, once the
+         * settled frame has been drawn; if another snap starts before then, only the screen that
+         * one settles on is delivered.
          *
          * @param screen The new screen index.
          */
         void onScreenSwitched(int screen);
     }
+
+    /**
+     * Listener for the scroll progress of the HorizontalPager, e.g. to drive tab indicators or
+     * parallax effects without polling getScrollX().
+     */
+    public static interface OnPageScrollListener {
+        /**
+         * Reports the scroll position while the pages move, from drags and snap animations. Called
+         * at most once per frame, on the UI thread.
+         *
+         * @param page The page at the left edge of the viewport.
+         * @param pageOffset How far the viewport has scrolled past that page's left edge, as a
+         *            fraction of the page width in [0, 1).
+         * @param pageOffsetPixels The same offset in pixels.
+         */
+        void onPageScrolled(int page, float pageOffset, int pageOffsetPixels);
+    }
+
+    /**
+     * Listener for the lifecycle of individual pages, e.g. to start and stop playback or to
+     * release images of pages that are out of view. Called on the UI thread. The view passed is
+     * null for a page that isn't attached (any more).
+     */
+    public static interface PageLifecycleListener {
+        /**
+         * Reports that all of a page came into view.
+         *
+         * @param page The page index.
+         * @param view The page's view, or null.
+         */
+        void onPageVisible(int page, View view);
+
+        /**
+         * Reports that part of a page came into view, or that a page that was all in view is now
+         * partly out of view.
+         *
+         * @param page The page index.
+         * @param view The page's view, or null.
+         */
+        void onPagePartiallyVisible(int page, View view);
+
+        /**
+         * Reports that a page went out of view.
+         *
+         * @param page The page index.
+         * @param view The page's view, or null.
+         */
+        void onPageHidden(int page, View view);
+
+        /**
+         * Reports that the pager came to rest on a page, after a snap animation or a switch
+         * without animation.
+         *
+         * @param page The new current screen.
+         * @param view The page's view, or null.
+         */
+        void onPageSettled(int page, View view);
+
+        /**
+         * Asks a hidden page to release what it can rebuild later, because the system is low on
+         * memory. The page is told again with {@link #onPageVisible(int, View)} or
+         * {@link #onPagePartiallyVisible(int, View)} when it comes back into view.
+         *
+         * @param page The page index.
+         * @param view The page's view.
+         * @param level The trim level, one of the {@code TRIM_MEMORY_...} levels of
+         *            {@link ComponentCallbacks2}.
+         * @return The memory released, in bytes; 0 if the page held nothing to release.
+         */
+        long onTrimPage(int page, View view, int level);
+    }
+
+    /**
+     * Receives performance measurements from a HorizontalPager, e.g. for telemetry. All times are
+     * in nanoseconds. Called on the UI thread; implementations should be quick and shouldn't
+     * allocate.
+     */
+    public static interface MetricsListener {
+        /**
+         * Reports the time between two frames of a snap animation.
+         *
+         * @param frameIntervalNanos The time since the previous animation frame.
+         * @param overBudget True if the interval exceeded the frame budget.
+         */
+        void onAnimationFrame(long frameIntervalNanos, boolean overBudget);
+
+        /**
+         * Reports the end of a snap animation.
+         *
+         * @param frameCount The number of frame intervals measured.
+         * @param framesOverBudget How many of them exceeded the frame budget.
+         */
+        void onAnimationFinished(int frameCount, int framesOverBudget);
+
+        /**
+         * Reports the time from the ACTION_UP that released a drag to the resulting
+         * {@link OnScreenSwitchListener#onScreenSwitched(int)}.
+         *
+         * @param screen The new screen index.
+         * @param latencyNanos The time from the release to the switch.
+         */
+        void onReleaseToScreenSwitch(int screen, long latencyNanos);
+
+        /**
+         * Reports the time spent in one onMeasure pass.
+         *
+         * @param durationNanos The pass duration.
+         */
+        void onMeasurePass(long durationNanos);
+
+        /**
+         * Reports the time spent in one onLayout pass.
+         *
+         * @param durationNanos The pass duration.
+         */
+        void onLayoutPass(long durationNanos);
+
+        /**
+         * Reports a page taken off the hardware layer it was put on for the pages' motion (see
+         * {@link HorizontalPager#setPromotePagesToLayers(boolean)}).
+         *
+         * @param page The page index.
+         * @param liveNanos How long the layer was live.
+         */
+        void onPageLayerReleased(int page, long liveNanos);
+
+        /**
+         * Reports the decision whether a touch gesture is horizontal (paging) or vertical (left
+         * to the children). A gesture can be decided more than once: after a vertical decision,
+         * later horizontal movement is looked at again.
+         *
+         * @param horizontal True if the gesture was decided horizontal.
+         * @param events The number of MOVE events since ACTION_DOWN, including the deciding one.
+         * @param samples The number of touch samples, historical ones included, the decision
+         *            looked at.
+         */
+        void onTouchAxisDecided(boolean horizontal, int events, int samples);
+
+        /**
+         * Reports, once per drawn frame, how many pixels the pager didn't paint because opaque
+         * pages covered them (see {@link HorizontalPager#setPagesOpaque(boolean)}).
+         *
+         * @param pixels The pixels saved in the frame; 0 if nothing was covered.
+         */
+        void onOverdrawSaved(int pixels);
+    }
 }
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2011 Yoni Samlan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.ysamlan.horizontalpager;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+
+/**
+ * Forwards the system's memory trim levels to {@link HorizontalPager} while it is attached to a
+ * window. Only exists where {@link ComponentCallbacks2} does (API 14+): on older platforms this
+ * class can't even be loaded, so callers check the platform version before touching it, and the
+ * app can call {@link HorizontalPager#trimMemory(int)} itself, e.g. from
+ * {@link android.app.Activity#onLowMemory()}. {@link Callback} doesn't depend on API 14.
+ */
+final class MemoryTrimCallbacks implements ComponentCallbacks2 {
+    /**
+     * Receives the trim levels.
+     */
+    interface Callback {
+        /**
+         * Called on the UI thread when the system asks the process to release memory.
+         *
+         * @param level One of the {@code TRIM_MEMORY_...} levels of {@link ComponentCallbacks2}.
+         */
+        void onTrimMemory(int level);
+    }
+
+    private final Context mContext;
+    private final Callback mCallback;
+
+    private MemoryTrimCallbacks(final Context context, final Callback callback) {
+        mContext = context;
+        mCallback = callback;
+    }
+
+    /**
+     * Starts forwarding trim levels. Only call on API 14 and up.
+     *
+     * @param context Any context of the app; its application context is registered with.
+     * @param callback The receiver of the trim levels.
+     * @return The registration, to pass to {@link #unregister()}.
+     */
+    static MemoryTrimCallbacks register(final Context context, final Callback callback) {
+        final MemoryTrimCallbacks callbacks =
+                new MemoryTrimCallbacks(context.getApplicationContext(), callback);
+        callbacks.mContext.registerComponentCallbacks(callbacks);
+        return callbacks;
+    }
+
+    /**
+     * Stops forwarding trim levels.
+     */
+    void unregister() {
+        mContext.unregisterComponentCallbacks(this);
+    }
+
+    @Override
+    public void onTrimMemory(final int level) {
+        mCallback.onTrimMemory(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        mCallback.onTrimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onConfigurationChanged(final Configuration newConfig) {
+        // Not interested
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2011 Yoni Samlan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.ysamlan.horizontalpager;
+
+import java.util.ArrayList;
+
+import android.database.DataSetObservable;
+import android.database.DataSetObserver;
+import android.view.View;
+import android.view.ViewGroup;
+
+/**
+ * Supplies pages to a {@link HorizontalPager} on demand, so that large page sets don't need a live
+ * view for every page.
+ * <p>
+ * Only the current page and {@link HorizontalPager#setOffscreenPageLimit(int)} pages on either side
+ * of it are attached to the pager at any time. Pages that leave that window are passed to
+ * {@link #recyclePage(View, int)} and kept in a pool per view type, from which they are handed
+ * back to {@link #bindPage(View, int)} for another position.
+ * <p>
+ * With {@link HorizontalPager#setPrefetchExecutor(java.util.concurrent.Executor, int)}, the data
+ * for the pages ahead in the paging direction is loaded in the background by
+ * {@link #preparePageData(int)} and bound to a page view before the page scrolls into view.
+ */
+public abstract class PageAdapter {
+    private final DataSetObservable mDataSetObservable = new DataSetObservable();
+    private final ArrayList<PageObserver> mPageObservers = new ArrayList<PageObserver>();
+
+    /**
+     * Receives changes to individual pages, as opposed to the whole data set.
+     */
+    interface PageObserver {
+        /**
+         * Called when {@link #getPageWidth(int)} changed for a page.
+         *
+         * @param position The page position.
+         */
+        void onPageWidthChanged(int position);
+
+        /**
+         * Called when pages were inserted.
+         *
+         * @param positionStart The position of the first new page.
+         * @param itemCount The number of new pages.
+         */
+        void onPagesInserted(int positionStart, int itemCount);
+
+        /**
+         * Called when pages were removed.
+         *
+         * @param positionStart The former position of the first removed page.
+         * @param itemCount The number of removed pages.
+         */
+        void onPagesRemoved(int positionStart, int itemCount);
+
+        /**
+         * Called when a page moved.
+         *
+         * @param fromPosition The page's former position.
+         * @param toPosition The page's new position.
+         */
+        void onPageMoved(int fromPosition, int toPosition);
+
+        /**
+         * Called when the data of pages changed in place.
+         *
+         * @param positionStart The position of the first changed page.
+         * @param itemCount The number of changed pages.
+         */
+        void onPagesChanged(int positionStart, int itemCount);
+    }
+
+    /**
+     * Returns the number of pages in the data set.
+     *
+     * @return The page count.
+     */
+    public abstract int getCount();
+
+    /**
+     * Returns the number of distinct view types returned by {@link #getItemViewType(int)}.
+     *
+     * @return The view type count; 1 by default.
+     */
+    public int getViewTypeCount() {
+        return 1;
+    }
+
+    /**
+     * Returns the view type of the page at the given position. Recycled pages are only rebound to
+     * positions of the same type.
+     *
+     * @param position The page position.
+     * @return A type between 0 and {@link #getViewTypeCount()} - 1; 0 by default.
+     */
+    public int getItemViewType(final int position) {
+        return 0;
+    }
+
+    /**
+     * Returns the width of the page at the given position as a fraction of the pager's width.
+     * Pages narrower than the pager leave the following pages peeking in next to them.
+     *
+     * @param position The page position.
+     * @return The width fraction; 1 (a full page) by default.
+     */
+    public float getPageWidth(final int position) {
+        return 1f;
+    }
+
+    /**
+     * Creates a new, unbound page of the given type. Called only when the recycle pool for that
+     * type is empty.
+     *
+     * @param parent The pager the page will be attached to.
+     * @param viewType The view type, as returned by {@link #getItemViewType(int)}.
+     * @return The new page view.
+     */
+    public abstract View createPage(ViewGroup parent, int viewType);
+
+    /**
+     * Binds the data for a position to a page, which is either new from
+     * {@link #createPage(ViewGroup, int)} or a recycled page of the same view type.
+     *
+     * @param page The page to bind.
+     * @param position The page position.
+     */
+    public abstract void bindPage(View page, int position);
+
+    /**
+     * Loads whatever a page needs to be bound (decoded images, query results, ...) ahead of time.
+     * Called on the pager's prefetch executor, never on the UI thread, so it must not touch views.
+     *
+     * @param position The page position.
+     * @return The data to hand to {@link #bindPage(View, int, Object)}; null by default.
+     */
+    public Object preparePageData(final int position) {
+        return null;
+    }
+
+    /**
+     * Binds a page with data from {@link #preparePageData(int)}. Called on the UI thread; the
+     * data is null if the page was needed before it could be prepared. By default ignores the data
+     * and calls {@link #bindPage(View, int)}.
+     *
+     * @param page The page to bind.
+     * @param position The page position.
+     * @param preparedData The prepared data, or null.
+     */
+    public void bindPage(final View page, final int position, final Object preparedData) {
+        bindPage(page, position);
+    }
+
+    /**
+     * Called when a page leaves the attached window and goes back to the recycle pool. Release
+     * anything expensive the page holds for its position here.
+     *
+     * @param page The page being recycled.
+     * @param position The position the page was bound to.
+     */
+    public void recyclePage(final View page, final int position) {
+        // Nothing to release by default
+    }
+
+    /**
+     * Notifies the attached pager that pages were inserted. Unlike
+     * {@link #notifyDataSetChanged()}, the attached pages are kept and the pager stays on the page
+     * it shows, even if its position changed. Notifications made in the same UI thread turn are
+     * applied together, with one layout of the pages that moved, on the next frame.
+     *
+     * @param positionStart The position of the first new page.
+     * @param itemCount The number of new pages.
+     */
+    public void notifyPagesInserted(final int positionStart, final int itemCount) {
+        for (int i = mPageObservers.size() - 1; i >= 0; i--) {
+            mPageObservers.get(i).onPagesInserted(positionStart, itemCount);
+        }
+    }
+
+    /**
+     * Notifies the attached pager that pages were removed. If the current page was removed, the
+     * pager moves to the page that took its place. See {@link #notifyPagesInserted(int, int)}.
+     *
+     * @param positionStart The former position of the first removed page.
+     * @param itemCount The number of removed pages.
+     */
+    public void notifyPagesRemoved(final int positionStart, final int itemCount) {
+        for (int i = mPageObservers.size() - 1; i >= 0; i--) {
+            mPageObservers.get(i).onPagesRemoved(positionStart, itemCount);
+        }
+    }
+
+    /**
+     * Notifies the attached pager that a page moved. See {@link #notifyPagesInserted(int, int)}.
+     *
+     * @param fromPosition The page's former position.
+     * @param toPosition The page's new position.
+     */
+    public void notifyPageMoved(final int fromPosition, final int toPosition) {
+        for (int i = mPageObservers.size() - 1; i >= 0; i--) {
+            mPageObservers.get(i).onPageMoved(fromPosition, toPosition);
+        }
+    }
+
+    /**
+     * Notifies the attached pager that the data of pages changed in place, so only those pages
+     * are bound again. See {@link #notifyPagesInserted(int, int)}.
+     *
+     * @param positionStart The position of the first changed page.
+     * @param itemCount The number of changed pages.
+     */
+    public void notifyPagesChanged(final int positionStart, final int itemCount) {
+        for (int i = mPageObservers.size() - 1; i >= 0; i--) {
+            mPageObservers.get(i).onPagesChanged(positionStart, itemCount);
+        }
+    }
+
+    /**
+     * Notifies the attached pager that the data set changed and all attached pages should be
+     * rebound. Prefer the finer notifications, e.g. from {@link PageDiff}, where the changes are
+     * known.
+     */
+    public void notifyDataSetChanged() {
+        mDataSetObservable.notifyChanged();
+    }
+
+    /**
+     * Notifies the attached pager that {@link #getPageWidth(int)} changed for one page. Only that
+     * page is measured again; the pages after it are moved by the difference.
+     *
+     * @param position The page position.
+     */
+    public void notifyPageWidthChanged(final int position) {
+        for (int i = mPageObservers.size() - 1; i >= 0; i--) {
+            mPageObservers.get(i).onPageWidthChanged(position);
+        }
+    }
+
+    void registerPageObserver(final PageObserver observer) {
+        mPageObservers.add(observer);
+    }
+
+    void unregisterPageObserver(final PageObserver observer) {
+        mPageObservers.remove(observer);
+    }
+
+    void registerDataSetObserver(final DataSetObserver observer) {
+        mDataSetObservable.registerObserver(observer);
+    }
+
+    void unregisterDataSetObserver(final DataSetObserver observer) {
+        mDataSetObservable.unregisterObserver(observer);
+    }
+}
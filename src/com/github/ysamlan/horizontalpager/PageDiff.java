@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2011 Yoni Samlan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.ysamlan.horizontalpager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * The removals, moves, insertions and in-place changes that turn an old list of pages into a new
+ * one, to hand to a {@link PageAdapter} as fine-grained notifications instead of
+ * {@link PageAdapter#notifyDataSetChanged()}:
+ *
+ * <pre>
+ * final PageDiff diff = PageDiff.calculate(mItems, newItems);
+ * mItems = newItems;
+ * diff.dispatchUpdatesTo(adapter);
+ * </pre>
+ *
+ * Pages are matched by a stable id. Pages whose relative order changed are reported as moves; the
+ * longest run of pages that kept their relative order stays in place, so a page moved across the
+ * list is one move rather than a shift of everything in between. Computing the diff looks only at
+ * what the {@link PageMatcher} reports; only {@link #dispatchUpdatesTo(PageAdapter)} touches the
+ * adapter.
+ */
+public final class PageDiff {
+    private static final int UPDATE_REMOVE = 0;
+    private static final int UPDATE_MOVE = 1;
+    private static final int UPDATE_INSERT = 2;
+    private static final int UPDATE_CHANGE = 3;
+    // Each update takes three ints: type, position, count (or target position of a move)
+    private static final int UPDATE_SIZE = 3;
+
+    /**
+     * Tells which pages of the old and new lists are the same page.
+     *
+     * @param <T> The page type.
+     */
+    public interface PageMatcher<T> {
+        /**
+         * Returns a key identifying a page across both lists, with usable {@code equals} and
+         * {@code hashCode}, e.g. a database id.
+         *
+         * @param page The page.
+         * @return The page's id; may be null.
+         */
+        Object getStableId(T page);
+
+        /**
+         * Returns whether a page with the same id looks the same in both lists. If not, it is
+         * reported as changed and bound again.
+         *
+         * @param oldPage The page from the old list.
+         * @param newPage The page from the new list.
+         * @return True if the page needs no rebinding.
+         */
+        boolean areContentsTheSame(T oldPage, T newPage);
+    }
+
+    private static final PageMatcher<Object> EQUALITY_MATCHER = new PageMatcher<Object>() {
+        @Override
+        public Object getStableId(final Object page) {
+            return page;
+        }
+
+        @Override
+        public boolean areContentsTheSame(final Object oldPage, final Object newPage) {
+            return true;
+        }
+    };
+
+    private int[] mUpdates = new int[4 * UPDATE_SIZE];
+    private int mUpdateCount;
+
+    private PageDiff() {
+    }
+
+    /**
+     * Calculates the updates between two lists of pages that are matched with {@code equals}; a
+     * matched page is never reported as changed.
+     *
+     * @param oldPages The pages the adapter showed so far.
+     * @param newPages The pages it shows from now on.
+     * @return The updates.
+     */
+    public static PageDiff calculate(final List<?> oldPages, final List<?> newPages) {
+        return calculate(oldPages, newPages, EQUALITY_MATCHER);
+    }
+
+    /**
+     * Calculates the updates between two lists of pages. Takes O(n log n), plus O(n) for each
+     * move.
+     *
+     * @param <T> The page type.
+     * @param oldPages The pages the adapter showed so far.
+     * @param newPages The pages it shows from now on.
+     * @param matcher Identifies pages across the lists.
+     * @return The updates.
+     */
+    public static <T> PageDiff calculate(final List<? extends T> oldPages,
+            final List<? extends T> newPages, final PageMatcher<? super T> matcher) {
+        final int oldSize = oldPages.size();
+        final int newSize = newPages.size();
+        final PageDiff diff = new PageDiff();
+
+        // Pair every new page with the first unpaired old page with the same id
+        final HashMap<Object, LinkedList<Integer>> oldPositions =
+                new HashMap<Object, LinkedList<Integer>>();
+        for (int i = 0; i < oldSize; i++) {
+            final Object id = matcher.getStableId(oldPages.get(i));
+            LinkedList<Integer> positions = oldPositions.get(id);
+            if (positions == null) {
+                positions = new LinkedList<Integer>();
+                oldPositions.put(id, positions);
+            }
+            positions.add(i);
+        }
+        final int[] newToOld = new int[newSize];
+        final boolean[] oldKept = new boolean[oldSize];
+        for (int j = 0; j < newSize; j++) {
+            final LinkedList<Integer> positions =
+                    oldPositions.get(matcher.getStableId(newPages.get(j)));
+            if (positions != null && !positions.isEmpty()) {
+                newToOld[j] = positions.removeFirst();
+                oldKept[newToOld[j]] = true;
+            } else {
+                newToOld[j] = -1;
+            }
+        }
+
+        // Removals, from the end so earlier positions stay valid
+        for (int i = oldSize - 1; i >= 0;) {
+            if (oldKept[i]) {
+                i--;
+                continue;
+            }
+            final int last = i;
+            while (i >= 0 && !oldKept[i]) {
+                i--;
+            }
+            diff.addUpdate(UPDATE_REMOVE, i + 1, last - i);
+        }
+
+        // Moves: pages outside the longest run that kept its order go after their new predecessor
+        final ArrayList<Integer> current = new ArrayList<Integer>(oldSize);
+        for (int i = 0; i < oldSize; i++) {
+            if (oldKept[i]) {
+                current.add(i);
+            }
+        }
+        final boolean[] stays = findLongestIncreasingRun(newToOld);
+        int predecessor = -1;
+        for (int j = 0; j < newSize; j++) {
+            final int oldPosition = newToOld[j];
+            if (oldPosition < 0) {
+                continue;
+            }
+            if (!stays[j]) {
+                final int from = current.indexOf(oldPosition);
+                current.remove(from);
+                final int to = predecessor < 0 ? 0 : current.indexOf(predecessor) + 1;
+                current.add(to, oldPosition);
+                if (from != to) {
+                    diff.addUpdate(UPDATE_MOVE, from, to);
+                }
+            }
+            predecessor = oldPosition;
+        }
+
+        // Insertions, in order, now that everything before each one is in place
+        for (int j = 0; j < newSize;) {
+            if (newToOld[j] >= 0) {
+                j++;
+                continue;
+            }
+            final int first = j;
+            while (j < newSize && newToOld[j] < 0) {
+                j++;
+            }
+            diff.addUpdate(UPDATE_INSERT, first, j - first);
+        }
+
+        // Changes, at the final positions
+        for (int j = 0; j < newSize;) {
+            if (newToOld[j] < 0
+                    || matcher.areContentsTheSame(oldPages.get(newToOld[j]), newPages.get(j))) {
+                j++;
+                continue;
+            }
+            final int first = j;
+            while (j < newSize && newToOld[j] >= 0
+                    && !matcher.areContentsTheSame(oldPages.get(newToOld[j]), newPages.get(j))) {
+                j++;
+            }
+            diff.addUpdate(UPDATE_CHANGE, first, j - first);
+        }
+
+        return diff;
+    }
+
+    /**
+     * Returns the number of notifications {@link #dispatchUpdatesTo(PageAdapter)} makes.
+     *
+     * @return The update count; 0 if the lists are the same.
+     */
+    public int getUpdateCount() {
+        return mUpdateCount;
+    }
+
+    /**
+     * Sends the updates to an adapter, which must already return the new pages.
+     *
+     * @param adapter The adapter.
+     */
+    public void dispatchUpdatesTo(final PageAdapter adapter) {
+        for (int i = 0; i < mUpdateCount * UPDATE_SIZE; i += UPDATE_SIZE) {
+            final int position = mUpdates[i + 1];
+            final int argument = mUpdates[i + 2];
+            switch (mUpdates[i]) {
+                case UPDATE_REMOVE:
+                    adapter.notifyPagesRemoved(position, argument);
+                    break;
+                case UPDATE_MOVE:
+                    adapter.notifyPageMoved(position, argument);
+                    break;
+                case UPDATE_INSERT:
+                    adapter.notifyPagesInserted(position, argument);
+                    break;
+                default:
+                    adapter.notifyPagesChanged(position, argument);
+                    break;
+            }
+        }
+    }
+
+    private void addUpdate(final int type, final int position, final int argument) {
+        final int index = mUpdateCount * UPDATE_SIZE;
+        if (index + UPDATE_SIZE > mUpdates.length) {
+            final int[] updates = new int[mUpdates.length * 2];
+            System.arraycopy(mUpdates, 0, updates, 0, index);
+            mUpdates = updates;
+        }
+        mUpdates[index] = type;
+        mUpdates[index + 1] = position;
+        mUpdates[index + 2] = argument;
+        mUpdateCount++;
+    }
+
+    /**
+     * Finds a longest strictly increasing subsequence of the non-negative values, by patience
+     * sorting in O(n log n).
+     *
+     * @param values The values; negative ones are skipped.
+     * @return For each index, whether its value is part of the subsequence.
+     */
+    private static boolean[] findLongestIncreasingRun(final int[] values) {
+        final int size = values.length;
+        // tails[k]: index of the smallest value ending an increasing run of length k + 1
+        final int[] tails = new int[size];
+        final int[] previous = new int[size];
+        int length = 0;
+        for (int j = 0; j < size; j++) {
+            if (values[j] < 0) {
+                continue;
+            }
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                final int middle = (low + high) >>> 1;
+                if (values[tails[middle]] < values[j]) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            previous[j] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = j;
+            if (low == length) {
+                length++;
+            }
+        }
+
+        final boolean[] inRun = new boolean[size];
+        for (int j = length > 0 ? tails[length - 1] : -1; j >= 0; j = previous[j]) {
+            inRun[j] = true;
+        }
+        return inRun;
+    }
+}
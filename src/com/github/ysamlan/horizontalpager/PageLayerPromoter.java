@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2011 Yoni Samlan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.ysamlan.horizontalpager;
+
+import android.os.Build;
+import android.view.View;
+
+/**
+ * Puts the pages of a {@link HorizontalPager} that are in view on hardware layers while the pages
+ * move, so each motion frame only composites the layers instead of redrawing the page
+ * hierarchies, and takes them off again when the pages come to rest. Layers only exist on
+ * hardware accelerated windows on API 11+; everywhere else nothing is promoted.
+ * <p>
+ * Only pages without a layer of their own are promoted, and they go back to
+ * {@link View#LAYER_TYPE_NONE}. Keeps at most a handful of pages, in arrays that only grow, so
+ * promoting and releasing don't allocate.
+ */
+final class PageLayerPromoter {
+    private static final int INITIAL_CAPACITY = 4;
+
+    private int[] mPages = new int[INITIAL_CAPACITY];
+    private View[] mViews = new View[INITIAL_CAPACITY];
+    private long[] mPromotedNanos = new long[INITIAL_CAPACITY];
+    private int mCount;
+
+    private int mPromotionCount;
+    private long mTotalLayerNanos;
+
+    /**
+     * Returns whether pages in a pager can be put on hardware layers.
+     *
+     * @param pager The pager.
+     * @return True on API 11+ if the pager is drawn with hardware acceleration.
+     */
+    static boolean canPromote(final View pager) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                && pager.isHardwareAccelerated();
+    }
+
+    /**
+     * Puts a page on a hardware layer unless it is promoted already or has a layer of its own.
+     * Only call if {@link #canPromote(View)}.
+     *
+     * @param page The page index.
+     * @param view The page's view.
+     * @param nowNanos The current time.
+     */
+    void promote(final int page, final View view, final long nowNanos) {
+        if (view.getLayerType() != View.LAYER_TYPE_NONE || indexOf(page) >= 0) {
+            return;
+        }
+        if (mCount == mPages.length) {
+            grow();
+        }
+        view.setLayerType(View.LAYER_TYPE_HARDWARE, null);
+        mPages[mCount] = page;
+        mViews[mCount] = view;
+        mPromotedNanos[mCount] = nowNanos;
+        mCount++;
+        mPromotionCount++;
+    }
+
+    /**
+     * Returns the number of promoted pages.
+     *
+     * @return The page count.
+     */
+    int size() {
+        return mCount;
+    }
+
+    /**
+     * Returns a promoted page.
+     *
+     * @param index An index between 0 and {@link #size()} - 1.
+     * @return The page index.
+     */
+    int pageAt(final int index) {
+        return mPages[index];
+    }
+
+    /**
+     * Returns the index of a promoted page.
+     *
+     * @param page The page index.
+     * @return The index for {@link #release(int, long)}, or -1 if the page isn't promoted.
+     */
+    int indexOf(final int page) {
+        for (int i = 0; i < mCount; i++) {
+            if (mPages[i] == page) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Takes a page off its hardware layer.
+     *
+     * @param index The page's index, as returned by {@link #indexOf(int)}.
+     * @param nowNanos The current time.
+     * @return How long the layer was live.
+     */
+    long release(final int index, final long nowNanos) {
+        final View view = mViews[index];
+        if (view.getLayerType() == View.LAYER_TYPE_HARDWARE) {
+            view.setLayerType(View.LAYER_TYPE_NONE, null);
+        }
+        final long liveNanos = nowNanos - mPromotedNanos[index];
+        mTotalLayerNanos += liveNanos;
+
+        mCount--;
+        mPages[index] = mPages[mCount];
+        mViews[index] = mViews[mCount];
+        mPromotedNanos[index] = mPromotedNanos[mCount];
+        mViews[mCount] = null;
+        return liveNanos;
+    }
+
+    /**
+     * Returns how many times a page was put on a hardware layer.
+     *
+     * @return The promotion count.
+     */
+    int getPromotionCount() {
+        return mPromotionCount;
+    }
+
+    /**
+     * Returns how long released layers were live, summed over all of them.
+     *
+     * @return The total time in nanoseconds.
+     */
+    long getTotalLayerNanos() {
+        return mTotalLayerNanos;
+    }
+
+    private void grow() {
+        final int capacity = mPages.length * 2;
+        final int[] pages = new int[capacity];
+        final View[] views = new View[capacity];
+        final long[] promotedNanos = new long[capacity];
+        System.arraycopy(mPages, 0, pages, 0, mCount);
+        System.arraycopy(mViews, 0, views, 0, mCount);
+        System.arraycopy(mPromotedNanos, 0, promotedNanos, 0, mCount);
+        mPages = pages;
+        mViews = views;
+        mPromotedNanos = promotedNanos;
+    }
+}
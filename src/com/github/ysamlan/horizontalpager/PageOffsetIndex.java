@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2011 Yoni Samlan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.ysamlan.horizontalpager;
+
+/**
+ * The horizontal geometry of a row of pages of individual widths, for {@link HorizontalPager} and
+ * {@link PagerPhysics}. Page widths are kept in a Fenwick (binary indexed) tree, so a page's
+ * offset, the page at an offset and a change of one page's width all take O(log n), even with
+ * thousands of pages. Free of any Android dependency.
+ * <p>
+ * Page 0 starts at offset 0 and every page starts where the previous one ends. For circular
+ * paging, the {@code getCircular...} methods treat the pages as repeating endlessly in both
+ * directions: page {@code n + k} is page {@code k} again, one total width further on, and page -1
+ * is the last page, just before page 0.
+ */
+public final class PageOffsetIndex {
+    private static final int[] NO_WIDTHS = new int[0];
+
+    private int mPageCount;
+    private int[] mWidths = NO_WIDTHS;
+    // mTree[i] holds the sum of the widths of pages (i - (i & -i)) to i - 1
+    private int[] mTree = new int[1];
+    // Highest power of two not above the page count, for the offset search
+    private int mSearchMask;
+
+    /**
+     * Resets the index to pages of one width in O(n).
+     *
+     * @param pageCount The number of pages.
+     * @param pageWidth The width of every page.
+     */
+    public void setUniform(final int pageCount, final int pageWidth) {
+        ensureCapacity(pageCount);
+        for (int i = 0; i < pageCount; i++) {
+            mWidths[i] = pageWidth;
+        }
+        build(pageCount);
+    }
+
+    /**
+     * Resets the index to the given page widths in O(n).
+     *
+     * @param widths The page widths; only the first {@code pageCount} are used.
+     * @param pageCount The number of pages.
+     */
+    public void setWidths(final int[] widths, final int pageCount) {
+        ensureCapacity(pageCount);
+        System.arraycopy(widths, 0, mWidths, 0, pageCount);
+        build(pageCount);
+    }
+
+    /**
+     * Changes the width of one page in O(log n), moving every later page by the difference.
+     *
+     * @param page The page index.
+     * @param width The new width.
+     */
+    public void setPageWidth(final int page, final int width) {
+        final int delta = width - mWidths[page];
+        if (delta == 0) {
+            return;
+        }
+        mWidths[page] = width;
+        for (int i = page + 1; i <= mPageCount; i += i & -i) {
+            mTree[i] += delta;
+        }
+    }
+
+    /**
+     * Returns the number of pages.
+     *
+     * @return The page count.
+     */
+    public int getPageCount() {
+        return mPageCount;
+    }
+
+    /**
+     * Returns the width of a page in O(1).
+     *
+     * @param page The page index.
+     * @return The page width.
+     */
+    public int getPageWidth(final int page) {
+        return mWidths[page];
+    }
+
+    /**
+     * Returns the offset of a page's left edge in O(log n).
+     *
+     * @param page The page index; {@link #getPageCount()} gives the total width.
+     * @return The sum of the widths of the pages before it.
+     */
+    public int getPageOffset(final int page) {
+        int offset = 0;
+        for (int i = Math.min(page, mPageCount); i > 0; i -= i & -i) {
+            offset += mTree[i];
+        }
+        return offset;
+    }
+
+    /**
+     * Returns the total width of all pages in O(log n).
+     *
+     * @return The offset of the right edge of the last page.
+     */
+    public int getTotalWidth() {
+        return getPageOffset(mPageCount);
+    }
+
+    /**
+     * Returns the page containing an offset in O(log n).
+     *
+     * @param offset The offset.
+     * @return The page whose extent contains the offset, clamped to the pages that exist; 0 if
+     *         there are none.
+     */
+    public int getPageAt(final int offset) {
+        if (offset < 0 || mPageCount == 0) {
+            return 0;
+        }
+
+        // Descend the tree to the last page whose left edge is at or before the offset
+        int page = 0;
+        int remaining = offset;
+        for (int step = mSearchMask; step > 0; step >>= 1) {
+            final int next = page + step;
+            if (next <= mPageCount && mTree[next] <= remaining) {
+                page = next;
+                remaining -= mTree[next];
+            }
+        }
+        return Math.min(page, mPageCount - 1);
+    }
+
+    /**
+     * Returns the offset of a page's left edge with the pages repeating in both directions, in
+     * O(log n).
+     *
+     * @param page The page index; any value, wrapping around the page count.
+     * @return The page's offset.
+     */
+    public int getCircularPageOffset(final int page) {
+        if (mPageCount == 0) {
+            return 0;
+        }
+        final int round = floorDiv(page, mPageCount);
+        return round * getTotalWidth() + getPageOffset(page - round * mPageCount);
+    }
+
+    /**
+     * Returns the page containing an offset with the pages repeating in both directions, in
+     * O(log n).
+     *
+     * @param offset The offset; any value.
+     * @return The unwrapped page index, so that {@link #getCircularPageOffset(int)} of it is at or
+     *         before the offset; 0 if there are no pages.
+     */
+    public int getCircularPageAt(final int offset) {
+        final int totalWidth = getTotalWidth();
+        if (mPageCount == 0 || totalWidth <= 0) {
+            return 0;
+        }
+        final int round = floorDiv(offset, totalWidth);
+        return round * mPageCount + getPageAt(offset - round * totalWidth);
+    }
+
+    private static int floorDiv(final int dividend, final int divisor) {
+        final int quotient = dividend / divisor;
+        return dividend % divisor < 0 ? quotient - 1 : quotient;
+    }
+
+    private void ensureCapacity(final int pageCount) {
+        if (mWidths.length < pageCount) {
+            mWidths = new int[pageCount];
+        }
+        if (mTree.length < pageCount + 1) {
+            mTree = new int[pageCount + 1];
+        }
+    }
+
+    private void build(final int pageCount) {
+        mPageCount = pageCount;
+        mTree[0] = 0;
+        for (int i = 1; i <= pageCount; i++) {
+            mTree[i] = mWidths[i - 1];
+        }
+        for (int i = 1; i <= pageCount; i++) {
+            final int parent = i + (i & -i);
+            if (parent <= pageCount) {
+                mTree[parent] += mTree[i];
+            }
+        }
+        mSearchMask = pageCount == 0 ? 0 : Integer.highestOneBit(pageCount);
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2011 Yoni Samlan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.ysamlan.horizontalpager;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.os.SystemClock;
+import android.util.SparseArray;
+
+/**
+ * Prepares the data for the next pages in the direction the user is paging, for
+ * {@link HorizontalPager} with a {@link PageAdapter}.
+ * <p>
+ * {@link PageAdapter#preparePageData(int)} runs on a caller-supplied executor. Finished data is
+ * handed back on the UI thread in time slices of at most {@link #DELIVERY_SLICE_MILLIS}, one page
+ * per {@link Callback#onPageDataReady(int, Object)}, so turning data into views never takes a
+ * whole frame. Work for pages that fall out of the prefetch range, e.g. because the user reversed
+ * direction, is cancelled.
+ */
+final class PagePrefetcher implements Handler.Callback {
+    // Longest run of page deliveries on the UI thread before yielding to the next message
+    private static final long DELIVERY_SLICE_MILLIS = 4;
+    private static final int NO_PAGE = -1;
+    private static final int MSG_DATA_READY = 1;
+    private static final int MSG_DELIVER = 2;
+
+    /**
+     * Receives prepared data on the UI thread.
+     */
+    interface Callback {
+        /**
+         * Returns whether a page already has a view, attached or prepared, so there is nothing to
+         * prefetch for it.
+         *
+         * @param position The page position.
+         * @return True if the page needs no prefetching.
+         */
+        boolean isPagePrepared(int position);
+
+        /**
+         * Hands over a page's prepared data, e.g. to bind a view with it ahead of time.
+         *
+         * @param position The page position.
+         * @param data The data returned by {@link PageAdapter#preparePageData(int)}.
+         */
+        void onPageDataReady(int position, Object data);
+    }
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper(), this);
+    private final Executor mExecutor;
+    private final int mPrefetchPages;
+    private final Callback mCallback;
+    private PageAdapter mAdapter;
+
+    // Requests queued or running on the executor, by page position
+    private final SparseArray<Task> mTasks = new SparseArray<Task>();
+    // Finished requests waiting for their time slice on the UI thread
+    private final ArrayList<Task> mReadyTasks = new ArrayList<Task>();
+    /*
+     * The prefetch range. In circular mode it may run past the last page and continue from the
+     * first one; mLastPage is then pageCount or more, and the pages there are wrapped.
+     */
+    private int mFirstPage = NO_PAGE;
+    private int mLastPage = NO_PAGE;
+    private int mPageCount;
+
+    /**
+     * Creates a prefetcher.
+     *
+     * @param executor The executor to prepare page data on.
+     * @param prefetchPages How many pages ahead to prepare.
+     * @param callback The receiver of the prepared data.
+     */
+    PagePrefetcher(final Executor executor, final int prefetchPages, final Callback callback) {
+        mExecutor = executor;
+        mPrefetchPages = prefetchPages;
+        mCallback = callback;
+    }
+
+    /**
+     * Switches to a new adapter, cancelling everything prepared for the old one.
+     *
+     * @param adapter The new adapter, or null.
+     */
+    void setAdapter(final PageAdapter adapter) {
+        cancelAll();
+        mAdapter = adapter;
+    }
+
+    /**
+     * Prefetches the pages after (or before) a page, cancelling requests for pages outside that
+     * range.
+     *
+     * @param fromPage The page the user is on or heading to.
+     * @param direction 1 if paging towards later pages, -1 if towards earlier ones.
+     * @param pageCount The number of pages.
+     * @param circular True if the pages wrap around, so the range continues past the first and
+     *            last pages.
+     */
+    void update(final int fromPage, final int direction, final int pageCount,
+            final boolean circular) {
+        if (mAdapter == null || direction == 0) {
+            return;
+        }
+
+        // At most every other page, even when a circular range goes around
+        final int pages = circular ? Math.min(mPrefetchPages, pageCount - 1) : mPrefetchPages;
+        int firstPage;
+        int lastPage;
+        if (direction > 0) {
+            firstPage = fromPage + 1;
+            lastPage = fromPage + pages;
+        } else {
+            firstPage = fromPage - pages;
+            lastPage = fromPage - 1;
+        }
+        if (circular) {
+            final int wrappedFirstPage = PagerPhysics.wrapPage(firstPage, pageCount);
+            lastPage += wrappedFirstPage - firstPage;
+            firstPage = wrappedFirstPage;
+        } else {
+            firstPage = Math.max(0, firstPage);
+            lastPage = Math.min(pageCount - 1, lastPage);
+        }
+        if (firstPage == mFirstPage && lastPage == mLastPage && pageCount == mPageCount) {
+            return;
+        }
+        mFirstPage = firstPage;
+        mLastPage = lastPage;
+        mPageCount = pageCount;
+
+        for (int i = mTasks.size() - 1; i >= 0; i--) {
+            if (!isInRange(mTasks.keyAt(i))) {
+                mTasks.valueAt(i).cancelled = true;
+                mTasks.removeAt(i);
+            }
+        }
+        for (int i = mReadyTasks.size() - 1; i >= 0; i--) {
+            if (!isInRange(mReadyTasks.get(i).position)) {
+                mReadyTasks.remove(i);
+            }
+        }
+
+        for (int page = firstPage; page <= lastPage; page++) {
+            final int position = page < pageCount ? page : page - pageCount;
+            if (mTasks.get(position) == null && !isReady(position)
+                    && !mCallback.isPagePrepared(position)) {
+                final Task task = new Task(mAdapter, position);
+                mTasks.put(position, task);
+                mExecutor.execute(task);
+            }
+        }
+    }
+
+    /**
+     * Returns whether a page is in the current prefetch range.
+     *
+     * @param position The page position.
+     * @return True if the page is prefetched; false for every page before the first update.
+     */
+    boolean isInRange(final int position) {
+        return position >= mFirstPage && position <= mLastPage
+                || position + mPageCount <= mLastPage;
+    }
+
+    /**
+     * Cancels all requests and drops undelivered data, e.g. because the data set changed.
+     */
+    void cancelAll() {
+        for (int i = 0; i < mTasks.size(); i++) {
+            mTasks.valueAt(i).cancelled = true;
+        }
+        mTasks.clear();
+        mReadyTasks.clear();
+        mHandler.removeMessages(MSG_DATA_READY);
+        mHandler.removeMessages(MSG_DELIVER);
+        mFirstPage = NO_PAGE;
+        mLastPage = NO_PAGE;
+    }
+
+    @Override
+    public boolean handleMessage(final Message msg) {
+        switch (msg.what) {
+            case MSG_DATA_READY:
+                final Task task = (Task) msg.obj;
+                if (!task.cancelled && mTasks.get(task.position) == task) {
+                    mTasks.remove(task.position);
+                    mReadyTasks.add(task);
+                    if (!mHandler.hasMessages(MSG_DELIVER)) {
+                        mHandler.sendEmptyMessage(MSG_DELIVER);
+                    }
+                }
+                return true;
+            case MSG_DELIVER:
+                final long sliceStart = SystemClock.uptimeMillis();
+                while (!mReadyTasks.isEmpty()) {
+                    final Task ready = mReadyTasks.remove(0);
+                    mCallback.onPageDataReady(ready.position, ready.data);
+                    if (SystemClock.uptimeMillis() - sliceStart >= DELIVERY_SLICE_MILLIS) {
+                        break;
+                    }
+                }
+                if (!mReadyTasks.isEmpty()) {
+                    mHandler.sendEmptyMessage(MSG_DELIVER);
+                }
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private boolean isReady(final int position) {
+        for (int i = 0; i < mReadyTasks.size(); i++) {
+            if (mReadyTasks.get(i).position == position) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Prepares one page's data on the executor.
+     */
+    private final class Task implements Runnable {
+        final PageAdapter adapter;
+        final int position;
+        volatile boolean cancelled;
+        Object data;
+
+        Task(final PageAdapter adapter, final int position) {
+            this.adapter = adapter;
+            this.position = position;
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            data = adapter.preparePageData(position);
+            if (!cancelled) {
+                mHandler.obtainMessage(MSG_DATA_READY, this).sendToTarget();
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2011 Yoni Samlan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.ysamlan.horizontalpager;
+
+import java.util.ArrayList;
+
+import android.util.SparseArray;
+import android.view.View;
+
+/**
+ * Pool of detached pages, kept per view type, for {@link HorizontalPager} when it is backed by a
+ * {@link PageAdapter}.
+ */
+final class PageRecycler {
+    private final SparseArray<ArrayList<View>> mScrapByType = new SparseArray<ArrayList<View>>();
+
+    /**
+     * Adds a detached page to the pool for its view type.
+     *
+     * @param viewType The page's view type.
+     * @param page The detached page.
+     */
+    void addScrapPage(final int viewType, final View page) {
+        ArrayList<View> scrap = mScrapByType.get(viewType);
+        if (scrap == null) {
+            scrap = new ArrayList<View>();
+            mScrapByType.put(viewType, scrap);
+        }
+        scrap.add(page);
+    }
+
+    /**
+     * Takes a page of the given view type out of the pool.
+     *
+     * @param viewType The wanted view type.
+     * @return A detached page, or null if none of that type is pooled.
+     */
+    View getScrapPage(final int viewType) {
+        final ArrayList<View> scrap = mScrapByType.get(viewType);
+        if (scrap == null || scrap.isEmpty()) {
+            return null;
+        }
+        return scrap.remove(scrap.size() - 1);
+    }
+
+    /**
+     * Drops every pooled page, e.g. when the adapter (and so the meaning of the view types)
+     * changes.
+     */
+    void clear() {
+        mScrapByType.clear();
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2011 Yoni Samlan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.ysamlan.horizontalpager;
+
+import android.graphics.Bitmap;
+import android.util.SparseArray;
+
+/**
+ * Byte-bounded, least-recently-used cache of page bitmaps, keyed by page position. Used by
+ * {@link HorizontalPager} to draw snapshots of settled pages instead of their live view trees
+ * while the pager is being dragged or animated (see
+ * {@link HorizontalPager#setSnapshotCacheSize(int)}).
+ * <p>
+ * Lookups and hits don't allocate. The bitmap of the most recent eviction or invalidation is kept
+ * as a spare and handed out again by {@link #obtainBitmap(int, int)} when the size matches, so a
+ * cache that is full of same-sized pages stops allocating bitmaps altogether. A frame may already
+ * have recorded that bitmap when it leaves the cache, e.g. when a page invalidates itself while
+ * the pager draws, so it only becomes the spare with {@link #onFrameStarted()}, once that frame
+ * has gone to the renderer. Bitmaps are never recycled; ones that aren't kept are left to the
+ * garbage collector.
+ */
+public final class PageSnapshotCache {
+    private final int mMaxSizeBytes;
+    private final SparseArray<Entry> mEntries = new SparseArray<Entry>();
+    // Doubly linked list of entries, most recently used at the head
+    private Entry mHead;
+    private Entry mTail;
+    private int mSizeBytes;
+    private Bitmap mSpareBitmap;
+    // Left the cache since the current frame started; may still be drawn by that frame
+    private Bitmap mReleasedBitmap;
+
+    private int mHitCount;
+    private int mMissCount;
+    private int mEvictionCount;
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param maxSizeBytes The most bitmap memory the cache may hold, in bytes.
+     */
+    PageSnapshotCache(final int maxSizeBytes) {
+        mMaxSizeBytes = maxSizeBytes;
+    }
+
+    /**
+     * Returns the snapshot of a page and marks it as most recently used. Counts a hit or a miss.
+     *
+     * @param position The page position.
+     * @return The snapshot, or null if the page has none.
+     */
+    Bitmap get(final int position) {
+        final Entry entry = mEntries.get(position);
+        if (entry == null) {
+            mMissCount++;
+            return null;
+        }
+        mHitCount++;
+        moveToHead(entry);
+        return entry.bitmap;
+    }
+
+    /**
+     * Checks for a snapshot without counting a hit or miss or changing the eviction order.
+     *
+     * @param position The page position.
+     * @return True if the page has a snapshot.
+     */
+    boolean contains(final int position) {
+        return mEntries.get(position) != null;
+    }
+
+    /**
+     * Stores a page's snapshot, evicting least recently used snapshots until it fits. A snapshot
+     * bigger than the whole budget isn't stored.
+     *
+     * @param position The page position.
+     * @param bitmap The snapshot.
+     */
+    void put(final int position, final Bitmap bitmap) {
+        invalidate(position);
+
+        final int bytes = getByteCount(bitmap);
+        if (bytes > mMaxSizeBytes) {
+            releaseBitmap(bitmap);
+            return;
+        }
+        while (mSizeBytes + bytes > mMaxSizeBytes && mTail != null) {
+            removeEntry(mTail);
+            mEvictionCount++;
+        }
+
+        final Entry entry = new Entry(position, bitmap, bytes);
+        mEntries.put(position, entry);
+        mSizeBytes += bytes;
+        entry.next = mHead;
+        if (mHead != null) {
+            mHead.previous = entry;
+        }
+        mHead = entry;
+        if (mTail == null) {
+            mTail = entry;
+        }
+    }
+
+    /**
+     * Drops a page's snapshot, e.g. because the page redrew itself.
+     *
+     * @param position The page position.
+     */
+    void invalidate(final int position) {
+        final Entry entry = mEntries.get(position);
+        if (entry != null) {
+            removeEntry(entry);
+        }
+    }
+
+    /**
+     * Drops the snapshots of a page and every page after it, e.g. because pages were inserted or
+     * removed there and the later positions now show different pages.
+     *
+     * @param position The first page position to drop.
+     */
+    void invalidateFrom(final int position) {
+        for (int i = mEntries.size() - 1; i >= 0 && mEntries.keyAt(i) >= position; i--) {
+            removeEntry(mEntries.valueAt(i));
+        }
+    }
+
+    /**
+     * Drops every snapshot and the spare bitmap, leaving them to the garbage collector.
+     */
+    void clear() {
+        while (mTail != null) {
+            removeEntry(mTail);
+        }
+        mSpareBitmap = null;
+        mReleasedBitmap = null;
+    }
+
+    /**
+     * Marks the start of a frame: the last bitmap that left the cache before it can't be part of
+     * a frame the renderer hasn't taken yet, so it becomes the spare.
+     */
+    void onFrameStarted() {
+        if (mReleasedBitmap != null) {
+            mSpareBitmap = mReleasedBitmap;
+            mReleasedBitmap = null;
+        }
+    }
+
+    /**
+     * Returns a bitmap to draw a new snapshot into, reusing the spare bitmap if it has the right
+     * size.
+     *
+     * @param width The snapshot width.
+     * @param height The snapshot height.
+     * @return A bitmap of the given size; its content is undefined.
+     */
+    Bitmap obtainBitmap(final int width, final int height) {
+        final Bitmap spare = mSpareBitmap;
+        if (spare != null && spare.getWidth() == width && spare.getHeight() == height) {
+            mSpareBitmap = null;
+            return spare;
+        }
+        return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    /**
+     * Returns the number of lookups that found a snapshot.
+     *
+     * @return The hit count.
+     */
+    public int getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * Returns the number of lookups that found no snapshot.
+     *
+     * @return The miss count.
+     */
+    public int getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * Returns the number of snapshots evicted to stay within the byte budget.
+     *
+     * @return The eviction count.
+     */
+    public int getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    /**
+     * Returns the bitmap memory currently held by snapshots.
+     *
+     * @return The size in bytes.
+     */
+    public int getSizeBytes() {
+        return mSizeBytes;
+    }
+
+    /**
+     * Returns the byte budget of the cache.
+     *
+     * @return The maximum size in bytes.
+     */
+    public int getMaxSizeBytes() {
+        return mMaxSizeBytes;
+    }
+
+    private void moveToHead(final Entry entry) {
+        if (entry == mHead) {
+            return;
+        }
+        unlink(entry);
+        entry.next = mHead;
+        mHead.previous = entry;
+        mHead = entry;
+        if (mTail == null) {
+            mTail = entry;
+        }
+    }
+
+    private void removeEntry(final Entry entry) {
+        unlink(entry);
+        mEntries.remove(entry.position);
+        mSizeBytes -= entry.bytes;
+        releaseBitmap(entry.bitmap);
+    }
+
+    private void unlink(final Entry entry) {
+        if (entry.previous != null) {
+            entry.previous.next = entry.next;
+        } else {
+            mHead = entry.next;
+        }
+        if (entry.next != null) {
+            entry.next.previous = entry.previous;
+        } else {
+            mTail = entry.previous;
+        }
+        entry.previous = null;
+        entry.next = null;
+    }
+
+    /**
+     * Keeps a bitmap that left the cache to become the spare with the next frame.
+     */
+    private void releaseBitmap(final Bitmap bitmap) {
+        mReleasedBitmap = bitmap;
+    }
+
+    private static int getByteCount(final Bitmap bitmap) {
+        return bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+    private static final class Entry {
+        final int position;
+        final Bitmap bitmap;
+        final int bytes;
+        Entry previous;
+        Entry next;
+
+        Entry(final int position, final Bitmap bitmap, final int bytes) {
+            this.position = position;
+            this.bitmap = bitmap;
+            this.bytes = bytes;
+        }
+    }
+}
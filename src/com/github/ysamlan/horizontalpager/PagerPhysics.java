@@ -0,0 +1,613 @@
+/*
+ * Copyright (C) 2011 Yoni Samlan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.ysamlan.horizontalpager;
+
+/**
+ * The snap and drag decisions of {@link HorizontalPager}, free of any Android dependency so they
+ * can be unit tested and benchmarked on a plain JVM.
+ * <p>
+ * All positions are in pixels in the pager's scroll coordinates, velocities are in pixels per
+ * second (positive when the finger moves right, i.e. towards the previous page). Every method
+ * comes in two forms: one for pages that are all {@code pageWidth} pixels wide, and one for pages
+ * of individual widths described by a {@link PageOffsetIndex}. The {@code Circular} variants
+ * work on unwrapped page indices over pages that repeat endlessly (see
+ * {@link PageOffsetIndex#getCircularPageOffset(int)}), with no first or last page to stop at.
+ * Methods don't allocate; plans are written into a caller-owned {@link SnapPlan}.
+ */
+public final class PagerPhysics {
+    private static final float MILLIS_PER_SECOND = 1000f;
+
+    private final int mSnapVelocity;
+    private final int mFractionOfPageForSwipe;
+    private final int mFullSnapDurationMillis;
+    private final float mFlingDeceleration;
+
+    /**
+     * Creates an engine with the given thresholds, in which a fling moves at most one page.
+     *
+     * @param snapVelocity Release velocity, in pixels per second, above which a fling moves to the
+     *            next/previous page regardless of how far the page was dragged.
+     * @param fractionOfPageForSwipe What fraction (1/x) of a page the user must drag to move to the
+     *            next/previous page without a fling.
+     * @param fullSnapDurationMillis How long a snap across one whole page takes; shorter snaps take
+     *            proportionally less.
+     */
+    public PagerPhysics(final int snapVelocity, final int fractionOfPageForSwipe,
+            final int fullSnapDurationMillis) {
+        this(snapVelocity, fractionOfPageForSwipe, fullSnapDurationMillis, 0);
+    }
+
+    /**
+     * Creates an engine with the given thresholds, in which a fling can move several pages.
+     *
+     * @param snapVelocity Release velocity, in pixels per second, above which a fling moves to the
+     *            next/previous page regardless of how far the page was dragged.
+     * @param fractionOfPageForSwipe What fraction (1/x) of a page the user must drag to move to the
+     *            next/previous page without a fling.
+     * @param fullSnapDurationMillis How long a snap across one whole page takes; shorter snaps take
+     *            proportionally less.
+     * @param flingDeceleration The constant deceleration, in pixels per second squared, that a
+     *            fling is projected with to find how far it would travel; 0 for single-page
+     *            flings.
+     */
+    public PagerPhysics(final int snapVelocity, final int fractionOfPageForSwipe,
+            final int fullSnapDurationMillis, final float flingDeceleration) {
+        mSnapVelocity = snapVelocity;
+        mFractionOfPageForSwipe = fractionOfPageForSwipe;
+        mFullSnapDurationMillis = fullSnapDurationMillis;
+        mFlingDeceleration = flingDeceleration;
+    }
+
+    /**
+     * Returns the release velocity above which a fling moves to another page.
+     *
+     * @return The velocity in pixels per second.
+     */
+    public int getSnapVelocity() {
+        return mSnapVelocity;
+    }
+
+    /**
+     * Returns what fraction (1/x) of a page must be dragged to move to another page without a
+     * fling.
+     *
+     * @return The divisor x.
+     */
+    public int getFractionOfPageForSwipe() {
+        return mFractionOfPageForSwipe;
+    }
+
+    /**
+     * Returns how long a snap across one whole page takes.
+     *
+     * @return The duration in milliseconds.
+     */
+    public int getFullSnapDurationMillis() {
+        return mFullSnapDurationMillis;
+    }
+
+    /**
+     * Returns the deceleration flings are projected with.
+     *
+     * @return The deceleration in pixels per second squared; 0 for single-page flings.
+     */
+    public float getFlingDeceleration() {
+        return mFlingDeceleration;
+    }
+
+    /**
+     * Clamps a page index to the pages that exist.
+     *
+     * @param page The page index.
+     * @param pageCount The number of pages.
+     * @return The clamped index; 0 if there are no pages.
+     */
+    public static int clampPage(final int page, final int pageCount) {
+        return Math.max(0, Math.min(page, pageCount - 1));
+    }
+
+    /**
+     * Maps an unwrapped circular page index to the page it shows.
+     *
+     * @param page The unwrapped page index; any value.
+     * @param pageCount The number of pages.
+     * @return The page, between 0 and {@code pageCount - 1}; 0 if there are no pages.
+     */
+    public static int wrapPage(final int page, final int pageCount) {
+        if (pageCount <= 0) {
+            return 0;
+        }
+        final int wrapped = page % pageCount;
+        return wrapped < 0 ? wrapped + pageCount : wrapped;
+    }
+
+    /**
+     * Returns the scroll position at which a page is fully in view.
+     *
+     * @param page The page index.
+     * @param pageWidth The page width.
+     * @return The page's left edge.
+     */
+    public static int getPageOffset(final int page, final int pageWidth) {
+        return page * pageWidth;
+    }
+
+    /**
+     * Returns the page the user most likely wants after a slow release: the current page for small
+     * drags, the next/previous page once a fraction of a page has been dragged.
+     *
+     * @param scrollX The scroll position at release.
+     * @param pageWidth The page width.
+     * @param currentPage The page the drag started on.
+     * @param pageCount The number of pages.
+     * @return The destination page.
+     */
+    public int computeDestinationPage(final int scrollX, final int pageWidth,
+            final int currentPage, final int pageCount) {
+        final int swipeThreshold = pageWidth / mFractionOfPageForSwipe;
+        return computeDestinationPage(scrollX - getPageOffset(currentPage, pageWidth),
+                swipeThreshold, swipeThreshold, currentPage, currentPage != 0,
+                currentPage + 1 != pageCount);
+    }
+
+    /**
+     * Like {@link #computeDestinationPage(int, int, int, int)} for pages of individual widths: the
+     * swipe threshold is a fraction of the page being dragged into view.
+     *
+     * @param scrollX The scroll position at release.
+     * @param pages The page geometry.
+     * @param currentPage The page the drag started on.
+     * @return The destination page.
+     */
+    public int computeDestinationPage(final int scrollX, final PageOffsetIndex pages,
+            final int currentPage) {
+        final int pageCount = pages.getPageCount();
+        final int prevThreshold = currentPage > 0
+                ? pages.getPageWidth(currentPage - 1) / mFractionOfPageForSwipe : 0;
+        final int nextThreshold = currentPage < pageCount
+                ? pages.getPageWidth(currentPage) / mFractionOfPageForSwipe : 0;
+        return computeDestinationPage(scrollX - pages.getPageOffset(currentPage), prevThreshold,
+                nextThreshold, currentPage, currentPage != 0, currentPage + 1 != pageCount);
+    }
+
+    /**
+     * Like {@link #computeDestinationPage(int, PageOffsetIndex, int)} for circular pages.
+     *
+     * @param scrollX The scroll position at release.
+     * @param pages The page geometry.
+     * @param currentPage The unwrapped page the drag started on.
+     * @return The unwrapped destination page.
+     */
+    public int computeCircularDestinationPage(final int scrollX, final PageOffsetIndex pages,
+            final int currentPage) {
+        final int pageCount = pages.getPageCount();
+        if (pageCount == 0) {
+            return currentPage;
+        }
+        final int prevThreshold =
+                pages.getPageWidth(wrapPage(currentPage - 1, pageCount)) / mFractionOfPageForSwipe;
+        final int nextThreshold =
+                pages.getPageWidth(wrapPage(currentPage, pageCount)) / mFractionOfPageForSwipe;
+        return computeDestinationPage(scrollX - pages.getCircularPageOffset(currentPage),
+                prevThreshold, nextThreshold, currentPage, true, true);
+    }
+
+    private static int computeDestinationPage(final int deltaX, final int prevThreshold,
+            final int nextThreshold, final int currentPage, final boolean hasPrevious,
+            final boolean hasNext) {
+        // Check if they want to go to the prev. screen
+        if (deltaX < 0 && hasPrevious && prevThreshold < -deltaX) {
+            return currentPage - 1;
+        }
+        // Check if they want to go to the next screen
+        if (deltaX > 0 && hasNext && nextThreshold < deltaX) {
+            return currentPage + 1;
+        }
+        return currentPage;
+    }
+
+    /**
+     * Returns the page to settle on when a drag is released: a fast enough fling moves one page in
+     * its direction, anything else goes to {@link #computeDestinationPage(int, int, int, int)}.
+     *
+     * @param scrollX The scroll position at release.
+     * @param velocityX The release velocity.
+     * @param pageWidth The page width.
+     * @param currentPage The page the drag started on.
+     * @param pageCount The number of pages.
+     * @return The page to snap to.
+     */
+    public int computeReleaseTargetPage(final int scrollX, final int velocityX,
+            final int pageWidth, final int currentPage, final int pageCount) {
+        final int flingPage = computeFlingPage(velocityX, currentPage, pageCount);
+        return flingPage != currentPage
+                ? flingPage : computeDestinationPage(scrollX, pageWidth, currentPage, pageCount);
+    }
+
+    /**
+     * Like {@link #computeReleaseTargetPage(int, int, int, int, int)} for pages of individual
+     * widths.
+     *
+     * @param scrollX The scroll position at release.
+     * @param velocityX The release velocity.
+     * @param pages The page geometry.
+     * @param currentPage The page the drag started on.
+     * @return The page to snap to.
+     */
+    public int computeReleaseTargetPage(final int scrollX, final int velocityX,
+            final PageOffsetIndex pages, final int currentPage) {
+        final int flingPage = computeFlingPage(velocityX, currentPage, pages.getPageCount());
+        return flingPage != currentPage
+                ? flingPage : computeDestinationPage(scrollX, pages, currentPage);
+    }
+
+    /**
+     * Like {@link #computeReleaseTargetPage(int, int, PageOffsetIndex, int)} for circular pages,
+     * where a fling past the last page moves on to the first one.
+     *
+     * @param scrollX The scroll position at release.
+     * @param velocityX The release velocity.
+     * @param pages The page geometry.
+     * @param currentPage The unwrapped page the drag started on.
+     * @return The unwrapped page to snap to.
+     */
+    public int computeCircularReleaseTargetPage(final int scrollX, final int velocityX,
+            final PageOffsetIndex pages, final int currentPage) {
+        if (velocityX > mSnapVelocity) {
+            return currentPage - 1;
+        } else if (velocityX < -mSnapVelocity) {
+            return currentPage + 1;
+        }
+        return computeCircularDestinationPage(scrollX, pages, currentPage);
+    }
+
+    /**
+     * Returns the page to settle on when a drag is released, letting a fling move several pages:
+     * the release velocity is projected through a constant deceleration to the scroll position
+     * where the fling would come to rest, and the page nearest to that position is the target.
+     * A fling still moves at least one page and at most {@code maxFlingPages}; slow releases
+     * behave as in {@link #computeReleaseTargetPage(int, int, PageOffsetIndex, int)}, which this
+     * equals for {@code maxFlingPages} 1. Constant time apart from the O(log n) page lookup.
+     *
+     * @param scrollX The scroll position at release.
+     * @param velocityX The release velocity.
+     * @param pages The page geometry.
+     * @param currentPage The page the drag started on.
+     * @param maxFlingPages The most pages a fling may move.
+     * @return The page to snap to.
+     */
+    public int computeFlingTargetPage(final int scrollX, final int velocityX,
+            final PageOffsetIndex pages, final int currentPage, final int maxFlingPages) {
+        final int pageCount = pages.getPageCount();
+        final int flingPage = computeFlingPage(velocityX, currentPage, pageCount);
+        if (flingPage == currentPage) {
+            return computeDestinationPage(scrollX, pages, currentPage);
+        }
+        final int projectedX = projectFling(scrollX, velocityX);
+        final int restingPage =
+                roundToPage(projectedX, pages.getPageAt(Math.max(0, projectedX)), pages, false);
+        return clampPage(limitFling(currentPage, flingPage, restingPage, maxFlingPages),
+                pageCount);
+    }
+
+    /**
+     * Like {@link #computeFlingTargetPage(int, int, PageOffsetIndex, int, int)} for circular
+     * pages.
+     *
+     * @param scrollX The scroll position at release.
+     * @param velocityX The release velocity.
+     * @param pages The page geometry.
+     * @param currentPage The unwrapped page the drag started on.
+     * @param maxFlingPages The most pages a fling may move.
+     * @return The unwrapped page to snap to.
+     */
+    public int computeCircularFlingTargetPage(final int scrollX, final int velocityX,
+            final PageOffsetIndex pages, final int currentPage, final int maxFlingPages) {
+        final int flingPage = computeCircularReleaseTargetPage(scrollX, velocityX, pages,
+                currentPage);
+        if (Math.abs(velocityX) <= mSnapVelocity || pages.getPageCount() == 0) {
+            return flingPage;
+        }
+        final int projectedX = projectFling(scrollX, velocityX);
+        final int restingPage =
+                roundToPage(projectedX, pages.getCircularPageAt(projectedX), pages, true);
+        return limitFling(currentPage, flingPage, restingPage, maxFlingPages);
+    }
+
+    /**
+     * Returns the page to jump to before settling on a fling target, so the pages a long fling
+     * passes are skipped rather than scrolled through: the page next to the target, if the target
+     * lies more than one page beyond the visible page in the fling's direction. Releases that
+     * aren't flings, and flings limited to one page, never jump; those can still end more than a
+     * page away after a long drag and are animated all the way, like any snap.
+     *
+     * @param visiblePage The page in the middle of the viewport at release.
+     * @param targetPage The page to settle on, from
+     *            {@link #computeFlingTargetPage(int, int, PageOffsetIndex, int, int)}.
+     * @param velocityX The release velocity.
+     * @param maxFlingPages The most pages a fling may move.
+     * @return The page to jump to, or {@code visiblePage} to scroll all the way.
+     */
+    public int computeFlingJumpPage(final int visiblePage, final int targetPage,
+            final int velocityX, final int maxFlingPages) {
+        if (maxFlingPages <= 1 || Math.abs(velocityX) <= mSnapVelocity) {
+            return visiblePage;
+        }
+        // A negative velocity pages towards later pages
+        if (velocityX < 0 && targetPage > visiblePage + 1) {
+            return targetPage - 1;
+        } else if (velocityX > 0 && targetPage < visiblePage - 1) {
+            return targetPage + 1;
+        }
+        return visiblePage;
+    }
+
+    /**
+     * Returns where a fling would come to rest under the fling deceleration.
+     */
+    private int projectFling(final int scrollX, final int velocityX) {
+        if (mFlingDeceleration <= 0) {
+            return scrollX;
+        }
+        // v^2 / 2a, against the velocity: a positive velocity scrolls towards smaller positions
+        final float distance = velocityX * (float) Math.abs(velocityX) / (2 * mFlingDeceleration);
+        return (int) (scrollX - distance);
+    }
+
+    /**
+     * Picks the page whose left edge is nearest to a scroll position.
+     */
+    private static int roundToPage(final int scrollX, final int pageAt,
+            final PageOffsetIndex pages, final boolean circular) {
+        final int pageCount = pages.getPageCount();
+        final int pageOffset =
+                circular ? pages.getCircularPageOffset(pageAt) : pages.getPageOffset(pageAt);
+        final int pageWidth = pages.getPageWidth(wrapPage(pageAt, pageCount));
+        return scrollX - pageOffset > pageWidth / 2 ? pageAt + 1 : pageAt;
+    }
+
+    /**
+     * Keeps a fling target between one and {@code maxFlingPages} pages in the fling's direction.
+     */
+    private static int limitFling(final int currentPage, final int flingPage,
+            final int restingPage, final int maxFlingPages) {
+        final int direction = flingPage > currentPage ? 1 : -1;
+        final int flingPages = Math.max(1,
+                Math.min(Math.max(1, maxFlingPages), (restingPage - currentPage) * direction));
+        return currentPage + direction * flingPages;
+    }
+
+    private int computeFlingPage(final int velocityX, final int currentPage,
+            final int pageCount) {
+        if (velocityX > mSnapVelocity && currentPage > 0) {
+            // Fling hard enough to move left
+            return currentPage - 1;
+        } else if (velocityX < -mSnapVelocity && currentPage < pageCount - 1) {
+            // Fling hard enough to move right
+            return currentPage + 1;
+        }
+        return currentPage;
+    }
+
+    /**
+     * Returns how long to animate a snap over the given distance: the full snap duration scaled by
+     * the fraction of a page left to scroll, so a page dragged 80% of the way animates for 20% of
+     * the time.
+     *
+     * @param deltaX The distance left to scroll.
+     * @param pageWidth The page width.
+     * @return The duration in milliseconds.
+     */
+    public int computeSnapDuration(final int deltaX, final int pageWidth) {
+        if (pageWidth <= 0) {
+            return 0;
+        }
+        return (int) (Math.abs(deltaX) / (float) pageWidth * mFullSnapDurationMillis);
+    }
+
+    /**
+     * Plans the animation that snaps to a page.
+     *
+     * @param scrollX The current scroll position.
+     * @param page The requested page; clamped to the pages that exist.
+     * @param pageWidth The page width.
+     * @param pageCount The number of pages.
+     * @param durationMillis An exact duration, or a negative value to time the snap by the
+     *            distance with {@link #computeSnapDuration(int, int)}.
+     * @param outPlan Receives the plan.
+     */
+    public void planSnap(final int scrollX, final int page, final int pageWidth,
+            final int pageCount, final int durationMillis, final SnapPlan outPlan) {
+        outPlan.targetPage = clampPage(page, pageCount);
+        outPlan.startX = scrollX;
+        outPlan.deltaX = getPageOffset(outPlan.targetPage, pageWidth) - scrollX;
+        outPlan.durationMillis = durationMillis < 0
+                ? computeSnapDuration(outPlan.deltaX, pageWidth) : durationMillis;
+    }
+
+    /**
+     * Like {@link #planSnap(int, int, int, int, int, SnapPlan)} for pages of individual widths; a
+     * snap timed by distance takes the full snap duration per width of the target page.
+     *
+     * @param scrollX The current scroll position.
+     * @param page The requested page; clamped to the pages that exist.
+     * @param pages The page geometry.
+     * @param durationMillis An exact duration, or a negative value to time the snap by the
+     *            distance.
+     * @param outPlan Receives the plan.
+     */
+    public void planSnap(final int scrollX, final int page, final PageOffsetIndex pages,
+            final int durationMillis, final SnapPlan outPlan) {
+        final int targetPage = clampPage(page, pages.getPageCount());
+        planSnap(scrollX, targetPage, pages.getPageOffset(targetPage), pages, durationMillis,
+                outPlan);
+    }
+
+    /**
+     * Like {@link #planSnap(int, int, PageOffsetIndex, int, SnapPlan)} for circular pages.
+     *
+     * @param scrollX The current scroll position.
+     * @param page The unwrapped page to snap to.
+     * @param pages The page geometry.
+     * @param durationMillis An exact duration, or a negative value to time the snap by the
+     *            distance.
+     * @param outPlan Receives the plan.
+     */
+    public void planCircularSnap(final int scrollX, final int page, final PageOffsetIndex pages,
+            final int durationMillis, final SnapPlan outPlan) {
+        planSnap(scrollX, page, pages.getCircularPageOffset(page), pages, durationMillis, outPlan);
+    }
+
+    private void planSnap(final int scrollX, final int targetPage, final int targetOffset,
+            final PageOffsetIndex pages, final int durationMillis, final SnapPlan outPlan) {
+        final int pageCount = pages.getPageCount();
+        outPlan.targetPage = targetPage;
+        outPlan.startX = scrollX;
+        outPlan.deltaX = targetOffset - scrollX;
+        if (durationMillis >= 0) {
+            outPlan.durationMillis = durationMillis;
+        } else if (pageCount == 0) {
+            outPlan.durationMillis = 0;
+        } else {
+            outPlan.durationMillis = computeSnapDuration(outPlan.deltaX,
+                    pages.getPageWidth(wrapPage(targetPage, pageCount)));
+        }
+    }
+
+    /**
+     * Plans the settle animation after a drag is released. Like
+     * {@link #planSnap(int, int, int, int, int, SnapPlan)} with a proportional duration, but if the
+     * release velocity points towards the target page, the duration is shortened so the animation
+     * starts at that velocity instead of slowing the page down first.
+     *
+     * @param scrollX The scroll position at release.
+     * @param page The page to settle on; clamped to the pages that exist.
+     * @param pageWidth The page width.
+     * @param pageCount The number of pages.
+     * @param velocityX The release velocity.
+     * @param interpolatorInitialSlope The slope of the animation's interpolator at its start, i.e.
+     *            its initial speed relative to a linear animation; 0 if it doesn't start moving
+     *            right away, which disables velocity matching.
+     * @param outPlan Receives the plan.
+     */
+    public void planRelease(final int scrollX, final int page, final int pageWidth,
+            final int pageCount, final int velocityX, final float interpolatorInitialSlope,
+            final SnapPlan outPlan) {
+        planSnap(scrollX, page, pageWidth, pageCount, -1, outPlan);
+        matchReleaseVelocity(velocityX, interpolatorInitialSlope, outPlan);
+    }
+
+    /**
+     * Like {@link #planRelease(int, int, int, int, int, float, SnapPlan)} for pages of individual
+     * widths.
+     *
+     * @param scrollX The scroll position at release.
+     * @param page The page to settle on; clamped to the pages that exist.
+     * @param pages The page geometry.
+     * @param velocityX The release velocity.
+     * @param interpolatorInitialSlope The slope of the animation's interpolator at its start.
+     * @param outPlan Receives the plan.
+     */
+    public void planRelease(final int scrollX, final int page, final PageOffsetIndex pages,
+            final int velocityX, final float interpolatorInitialSlope, final SnapPlan outPlan) {
+        planSnap(scrollX, page, pages, -1, outPlan);
+        matchReleaseVelocity(velocityX, interpolatorInitialSlope, outPlan);
+    }
+
+    /**
+     * Like {@link #planRelease(int, int, PageOffsetIndex, int, float, SnapPlan)} for circular
+     * pages.
+     *
+     * @param scrollX The scroll position at release.
+     * @param page The unwrapped page to settle on.
+     * @param pages The page geometry.
+     * @param velocityX The release velocity.
+     * @param interpolatorInitialSlope The slope of the animation's interpolator at its start.
+     * @param outPlan Receives the plan.
+     */
+    public void planCircularRelease(final int scrollX, final int page,
+            final PageOffsetIndex pages, final int velocityX, final float interpolatorInitialSlope,
+            final SnapPlan outPlan) {
+        planCircularSnap(scrollX, page, pages, -1, outPlan);
+        matchReleaseVelocity(velocityX, interpolatorInitialSlope, outPlan);
+    }
+
+    private static void matchReleaseVelocity(final int velocityX,
+            final float interpolatorInitialSlope, final SnapPlan outPlan) {
+        // A positive velocity (finger moving right) scrolls towards smaller positions
+        final boolean towardsTarget =
+                outPlan.deltaX != 0 && velocityX != 0 && (outPlan.deltaX > 0) == (velocityX < 0);
+        if (towardsTarget && interpolatorInitialSlope > 0) {
+            final int velocityDuration = (int) (interpolatorInitialSlope
+                    * Math.abs(outPlan.deltaX) * MILLIS_PER_SECOND / Math.abs(velocityX));
+            outPlan.durationMillis = Math.min(outPlan.durationMillis, velocityDuration);
+        }
+    }
+
+    /**
+     * Limits a drag so the pager can't scroll before the first page or past the last one.
+     *
+     * @param scrollX The current scroll position.
+     * @param deltaX The requested scroll distance (positive towards later pages).
+     * @param pageWidth The page width.
+     * @param pageCount The number of pages.
+     * @return The distance to actually scroll by, 0 if the pager is already at that edge.
+     */
+    public static int clampDragDelta(final int scrollX, final int deltaX, final int pageWidth,
+            final int pageCount) {
+        return clampDragDelta(scrollX, deltaX, getPageOffset(pageCount - 1, pageWidth));
+    }
+
+    /**
+     * Like {@link #clampDragDelta(int, int, int, int)} for pages of individual widths: the pager
+     * can't scroll past the left edge of the last page.
+     *
+     * @param scrollX The current scroll position.
+     * @param deltaX The requested scroll distance (positive towards later pages).
+     * @param pages The page geometry.
+     * @return The distance to actually scroll by, 0 if the pager is already at that edge.
+     */
+    public static int clampDragDelta(final int scrollX, final int deltaX,
+            final PageOffsetIndex pages) {
+        return clampDragDelta(scrollX, deltaX,
+                pages.getPageOffset(Math.max(0, pages.getPageCount() - 1)));
+    }
+
+    private static int clampDragDelta(final int scrollX, final int deltaX, final int maxScrollX) {
+        if (deltaX < 0) {
+            return scrollX > 0 ? Math.max(-scrollX, deltaX) : 0;
+        } else if (deltaX > 0) {
+            final int availableToScroll = maxScrollX - scrollX;
+            return availableToScroll > 0 ? Math.min(availableToScroll, deltaX) : 0;
+        }
+        return 0;
+    }
+
+    /**
+     * A snap animation: scroll from {@link #startX} by {@link #deltaX} pixels over
+     * {@link #durationMillis} and settle on {@link #targetPage}.
+     */
+    public static final class SnapPlan {
+        /** The page the animation settles on. */
+        public int targetPage;
+        /** The scroll position the animation starts from. */
+        public int startX;
+        /** The distance to scroll. */
+        public int deltaX;
+        /** The animation duration in milliseconds. */
+        public int durationMillis;
+    }
+}
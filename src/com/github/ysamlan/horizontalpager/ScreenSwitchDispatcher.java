@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2011 Yoni Samlan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.ysamlan.horizontalpager;
+
+import java.util.concurrent.Executor;
+
+import android.view.View;
+
+import com.github.ysamlan.horizontalpager.HorizontalPager.OnScreenSwitchListener;
+
+/**
+ * Delivers {@link OnScreenSwitchListener#onScreenSwitched(int)} to any number of listeners for
+ * {@link HorizontalPager}. Delivery is posted to run after the frame in which the pager settled,
+ * so listener work never blocks that frame, and a dispatch that is still pending when the next
+ * settle comes in is replaced by it, so only the final screen of rapid snaps is delivered.
+ * Listeners registered with an {@link Executor} are called on it instead of the UI thread.
+ */
+final class ScreenSwitchDispatcher implements Runnable {
+    private static final Record[] NO_RECORDS = new Record[0];
+
+    private final View mHost;
+    // Copied on write, so dispatching iterates without allocating or locking
+    private Record[] mRecords = NO_RECORDS;
+    private int mPendingScreen;
+    private boolean mPosted;
+
+    /**
+     * Creates a dispatcher.
+     *
+     * @param host The view to post deferred dispatches to.
+     */
+    ScreenSwitchDispatcher(final View host) {
+        mHost = host;
+    }
+
+    /**
+     * Registers a listener.
+     *
+     * @param listener The listener.
+     * @param executor The executor to call it on, or null for the UI thread.
+     */
+    void addListener(final OnScreenSwitchListener listener, final Executor executor) {
+        final Record[] records = new Record[mRecords.length + 1];
+        System.arraycopy(mRecords, 0, records, 0, mRecords.length);
+        records[mRecords.length] = new Record(listener, executor);
+        mRecords = records;
+    }
+
+    /**
+     * Unregisters every registration of a listener.
+     *
+     * @param listener The listener.
+     */
+    void removeListener(final OnScreenSwitchListener listener) {
+        int kept = 0;
+        for (final Record record : mRecords) {
+            if (record.listener != listener) {
+                kept++;
+            }
+        }
+        if (kept == mRecords.length) {
+            return;
+        }
+
+        final Record[] records = kept == 0 ? NO_RECORDS : new Record[kept];
+        int index = 0;
+        for (final Record record : mRecords) {
+            if (record.listener != listener) {
+                records[index++] = record;
+            }
+        }
+        mRecords = records;
+    }
+
+    /**
+     * Schedules delivery of a settled screen after the current frame, replacing a delivery that is
+     * still pending.
+     *
+     * @param screen The new screen index.
+     */
+    void dispatchScreenSwitched(final int screen) {
+        mPendingScreen = screen;
+        if (!mPosted && mRecords.length > 0) {
+            mPosted = true;
+            mHost.post(this);
+        }
+    }
+
+    /**
+     * Drops a pending delivery, e.g. because a new snap started before it ran.
+     */
+    void cancel() {
+        if (mPosted) {
+            mPosted = false;
+            mHost.removeCallbacks(this);
+        }
+    }
+
+    @Override
+    public void run() {
+        mPosted = false;
+        final int screen = mPendingScreen;
+        final Record[] records = mRecords;
+        for (int i = 0; i < records.length; i++) {
+            records[i].deliver(screen);
+        }
+    }
+
+    /**
+     * A registered listener and the executor it is called on.
+     */
+    private static final class Record {
+        final OnScreenSwitchListener listener;
+        final Executor executor;
+
+        Record(final OnScreenSwitchListener listener, final Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
+        }
+
+        void deliver(final int screen) {
+            if (executor == null) {
+                listener.onScreenSwitched(screen);
+            } else {
+                // Each hand-off keeps its own screen, so none is lost to a later one
+                executor.execute(new Delivery(listener, screen));
+            }
+        }
+    }
+
+    /**
+     * One screen switch handed off to an executor.
+     */
+    private static final class Delivery implements Runnable {
+        private final OnScreenSwitchListener mListener;
+        private final int mScreen;
+
+        Delivery(final OnScreenSwitchListener listener, final int screen) {
+            mListener = listener;
+            mScreen = screen;
+        }
+
+        @Override
+        public void run() {
+            mListener.onScreenSwitched(mScreen);
+        }
+    }
+}
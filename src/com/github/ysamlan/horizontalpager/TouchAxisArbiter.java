@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2011 Yoni Samlan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.ysamlan.horizontalpager;
+
+/**
+ * Decides whether a touch gesture is a horizontal or a vertical one from the first few samples
+ * after ACTION_DOWN, for {@link HorizontalPager}'s touch interception. Instead of testing the X
+ * and Y distances against the touch slop separately, it looks at the direction of the whole
+ * movement so far, projected a frame ahead with the latest velocity:
+ * <ul>
+ * <li>Nothing is decided until the movement leaves the touch slop, or is about to.</li>
+ * <li>Movements within the lock angle of the X axis are horizontal, movements within the lock
+ * angle of the Y axis are vertical.</li>
+ * <li>Diagonal movements wait for more samples, and go to the dominant axis once the decision
+ * sample count is reached or the movement is well past the slop.</li>
+ * </ul>
+ * Historical samples of batched MOVE events count as samples as well. Pure Java, so gesture
+ * replays can run the same arbitration off-device.
+ */
+public final class TouchAxisArbiter {
+    /** No decision yet. */
+    public static final int AXIS_UNDECIDED = 0;
+    /** The gesture is horizontal. */
+    public static final int AXIS_HORIZONTAL = 1;
+    /** The gesture is vertical. */
+    public static final int AXIS_VERTICAL = -1;
+
+    /** The default lock angle in degrees. */
+    public static final float DEFAULT_LOCK_ANGLE_DEGREES = 30;
+    /** The default number of samples a diagonal movement can wait for. */
+    public static final int DEFAULT_DECISION_SAMPLES = 6;
+
+    // How far ahead the latest velocity projects the movement; about one display frame
+    private static final int PREDICTION_MILLIS = 16;
+    // A diagonal movement this many slops long is decided without waiting for more samples
+    private static final int FORCE_DECISION_SLOPS = 2;
+
+    private final int mTouchSlop;
+    // Tangent of the lock angle: horizontal if |dy| <= |dx| * mLockSlope
+    private float mLockSlope;
+    private float mLockAngleDegrees;
+    private int mDecisionSamples;
+
+    private float mStartX;
+    private float mStartY;
+    private float mLastX;
+    private float mLastY;
+    private long mLastTimeMillis;
+    // Velocity between the last two samples, in pixels per millisecond
+    private float mVelocityX;
+    private float mVelocityY;
+    private int mSamples;
+    private int mEvents;
+    private int mAxis = AXIS_UNDECIDED;
+
+    /**
+     * Creates an arbiter.
+     *
+     * @param touchSlop The distance in pixels a touch can wander before it is a movement.
+     * @param lockAngleDegrees See {@link #setLockAngle(float)}.
+     * @param decisionSamples See {@link #setDecisionSamples(int)}.
+     */
+    public TouchAxisArbiter(final int touchSlop, final float lockAngleDegrees,
+            final int decisionSamples) {
+        mTouchSlop = touchSlop;
+        setLockAngle(lockAngleDegrees);
+        setDecisionSamples(decisionSamples);
+    }
+
+    /**
+     * Sets how far from an axis a movement may point and still be locked to that axis right away.
+     * Movements between the two lock angles are diagonal.
+     *
+     * @param degrees An angle between 0 and 45 degrees.
+     */
+    public void setLockAngle(final float degrees) {
+        if (degrees < 0 || degrees > 45) {
+            throw new IllegalArgumentException("Lock angle must be between 0 and 45 degrees");
+        }
+        mLockAngleDegrees = degrees;
+        mLockSlope = (float) Math.tan(Math.toRadians(degrees));
+    }
+
+    /**
+     * Returns the lock angle.
+     *
+     * @return The angle in degrees.
+     */
+    public float getLockAngle() {
+        return mLockAngleDegrees;
+    }
+
+    /**
+     * Sets how many samples a diagonal movement waits for before it goes to its dominant axis.
+     *
+     * @param samples At least 1; 1 decides every movement as soon as it leaves the slop.
+     */
+    public void setDecisionSamples(final int samples) {
+        if (samples < 1) {
+            throw new IllegalArgumentException("Decision samples must be at least 1");
+        }
+        mDecisionSamples = samples;
+    }
+
+    /**
+     * Returns how many samples a diagonal movement waits for.
+     *
+     * @return The sample count.
+     */
+    public int getDecisionSamples() {
+        return mDecisionSamples;
+    }
+
+    /**
+     * Starts a gesture at its ACTION_DOWN position.
+     *
+     * @param x The x coordinate.
+     * @param y The y coordinate.
+     * @param timeMillis The event time.
+     */
+    public void start(final float x, final float y, final long timeMillis) {
+        mEvents = 0;
+        mAxis = AXIS_UNDECIDED;
+        restart(x, y, timeMillis);
+    }
+
+    /**
+     * Decides again from a later position, e.g. after a vertical decision, to pick up horizontal
+     * movement that follows. Keeps the event count for {@link #getDecisionEvents()}.
+     *
+     * @param x The x coordinate to measure from.
+     * @param y The y coordinate to measure from.
+     * @param timeMillis The time of that position.
+     */
+    public void restart(final float x, final float y, final long timeMillis) {
+        mStartX = x;
+        mStartY = y;
+        mLastX = x;
+        mLastY = y;
+        mLastTimeMillis = timeMillis;
+        mVelocityX = 0;
+        mVelocityY = 0;
+        mSamples = 0;
+        mAxis = AXIS_UNDECIDED;
+    }
+
+    /**
+     * Adds a sample of the movement; call for each historical sample of a MOVE event before
+     * {@link #addEvent(float, float, long)}.
+     *
+     * @param x The x coordinate.
+     * @param y The y coordinate.
+     * @param timeMillis The sample time.
+     */
+    public void addSample(final float x, final float y, final long timeMillis) {
+        final long elapsedMillis = timeMillis - mLastTimeMillis;
+        if (elapsedMillis > 0) {
+            mVelocityX = (x - mLastX) / elapsedMillis;
+            mVelocityY = (y - mLastY) / elapsedMillis;
+        }
+        mLastX = x;
+        mLastY = y;
+        mLastTimeMillis = timeMillis;
+        mSamples++;
+    }
+
+    /**
+     * Adds the current position of a MOVE event and decides the axis if possible. Once decided,
+     * the axis stays until {@link #start} or {@link #restart}.
+     *
+     * @param x The x coordinate.
+     * @param y The y coordinate.
+     * @param timeMillis The event time.
+     * @return One of the {@code AXIS_...} constants.
+     */
+    public int addEvent(final float x, final float y, final long timeMillis) {
+        mEvents++;
+        addSample(x, y, timeMillis);
+        if (mAxis == AXIS_UNDECIDED) {
+            mAxis = decide();
+        }
+        return mAxis;
+    }
+
+    /**
+     * Returns the decided axis.
+     *
+     * @return One of the {@code AXIS_...} constants.
+     */
+    public int getAxis() {
+        return mAxis;
+    }
+
+    /**
+     * Returns the decision latency: the number of MOVE events since ACTION_DOWN, including the
+     * one that decided.
+     *
+     * @return The event count.
+     */
+    public int getDecisionEvents() {
+        return mEvents;
+    }
+
+    /**
+     * Returns the number of samples, historical ones included, since the gesture started or the
+     * last restart.
+     *
+     * @return The sample count.
+     */
+    public int getSampleCount() {
+        return mSamples;
+    }
+
+    /**
+     * Returns the horizontal movement since the gesture started or the last restart.
+     *
+     * @return The distance in pixels; positive towards the right.
+     */
+    public float getDeltaX() {
+        return mLastX - mStartX;
+    }
+
+    private int decide() {
+        final float deltaX = mLastX - mStartX;
+        final float deltaY = mLastY - mStartY;
+        final float distanceX = Math.abs(deltaX);
+        final float distanceY = Math.abs(deltaY);
+        final float predictedX = Math.abs(deltaX + mVelocityX * PREDICTION_MILLIS);
+        final float predictedY = Math.abs(deltaY + mVelocityY * PREDICTION_MILLIS);
+
+        // A projection alone only counts once the movement is halfway out of the slop
+        final float distance = Math.max(distanceX, distanceY);
+        if (distance <= mTouchSlop
+                && (distance * 2 <= mTouchSlop || Math.max(predictedX, predictedY) <= mTouchSlop)) {
+            return AXIS_UNDECIDED;
+        }
+
+        if (predictedY <= predictedX * mLockSlope) {
+            return AXIS_HORIZONTAL;
+        } else if (predictedX <= predictedY * mLockSlope) {
+            return AXIS_VERTICAL;
+        } else if (mSamples >= mDecisionSamples
+                || distance > mTouchSlop * FORCE_DECISION_SLOPS) {
+            return predictedX >= predictedY ? AXIS_HORIZONTAL : AXIS_VERTICAL;
+        }
+        return AXIS_UNDECIDED;
+    }
+}
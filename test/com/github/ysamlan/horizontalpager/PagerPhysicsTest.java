@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2011 Yoni Samlan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.ysamlan.horizontalpager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Plain-JVM tests of the snap, release and drag decisions in {@link PagerPhysics}, at the first and
+ * last pages, with and without a fling, and across a page width change in the middle of a snap.
+ * From the project root, with JUnit 4 on the classpath:
+ *
+ * <pre>
+ * javac -cp junit.jar -d bin-test src/com/github/ysamlan/horizontalpager/PagerPhysics.java \
+ *     src/com/github/ysamlan/horizontalpager/PageOffsetIndex.java \
+ *     test/com/github/ysamlan/horizontalpager/*.java
+ * java -cp bin-test:junit.jar:hamcrest-core.jar org.junit.runner.JUnitCore \
+ *     com.github.ysamlan.horizontalpager.PagerPhysicsTest
+ * </pre>
+ */
+public final class PagerPhysicsTest {
+    private static final int PAGE_WIDTH = 480;
+    private static final int PAGE_COUNT = 5;
+    private static final int SNAP_VELOCITY = 900;
+    private static final int FRACTION_OF_PAGE_FOR_SWIPE = 4;
+    private static final int FULL_SNAP_DURATION_MILLIS = 500;
+    // Projects a 2500 px/s fling 781 px, about 1.6 pages, ahead
+    private static final float FLING_DECELERATION = 4000;
+    private static final float INTERPOLATOR_INITIAL_SLOPE = 2f;
+
+    private final PagerPhysics mPhysics =
+            new PagerPhysics(SNAP_VELOCITY, FRACTION_OF_PAGE_FOR_SWIPE, FULL_SNAP_DURATION_MILLIS);
+    private final PagerPhysics mFlingPhysics = new PagerPhysics(SNAP_VELOCITY,
+            FRACTION_OF_PAGE_FOR_SWIPE, FULL_SNAP_DURATION_MILLIS, FLING_DECELERATION);
+    private final PagerPhysics.SnapPlan mPlan = new PagerPhysics.SnapPlan();
+
+    private static PageOffsetIndex uniformPages(final int pageCount, final int pageWidth) {
+        final PageOffsetIndex pages = new PageOffsetIndex();
+        pages.setUniform(pageCount, pageWidth);
+        return pages;
+    }
+
+    @Test
+    public void destinationStaysForSmallDrags() {
+        final int quarter = PAGE_WIDTH / FRACTION_OF_PAGE_FOR_SWIPE;
+        assertEquals(2, mPhysics.computeDestinationPage(2 * PAGE_WIDTH + quarter, PAGE_WIDTH, 2,
+                PAGE_COUNT));
+        assertEquals(2, mPhysics.computeDestinationPage(2 * PAGE_WIDTH - quarter, PAGE_WIDTH, 2,
+                PAGE_COUNT));
+        assertEquals(3, mPhysics.computeDestinationPage(2 * PAGE_WIDTH + quarter + 1, PAGE_WIDTH,
+                2, PAGE_COUNT));
+        assertEquals(1, mPhysics.computeDestinationPage(2 * PAGE_WIDTH - quarter - 1, PAGE_WIDTH,
+                2, PAGE_COUNT));
+    }
+
+    @Test
+    public void destinationDoesNotLeaveFirstOrLastPage() {
+        assertEquals(0, mPhysics.computeDestinationPage(-PAGE_WIDTH / 2, PAGE_WIDTH, 0,
+                PAGE_COUNT));
+        final int lastOffset = (PAGE_COUNT - 1) * PAGE_WIDTH;
+        assertEquals(PAGE_COUNT - 1, mPhysics.computeDestinationPage(lastOffset + PAGE_WIDTH / 2,
+                PAGE_WIDTH, PAGE_COUNT - 1, PAGE_COUNT));
+
+        final PageOffsetIndex pages = uniformPages(PAGE_COUNT, PAGE_WIDTH);
+        assertEquals(0, mPhysics.computeDestinationPage(-PAGE_WIDTH / 2, pages, 0));
+        assertEquals(PAGE_COUNT - 1, mPhysics.computeDestinationPage(lastOffset + PAGE_WIDTH / 2,
+                pages, PAGE_COUNT - 1));
+    }
+
+    @Test
+    public void releaseWithoutVelocityFollowsTheDrag() {
+        final int quarter = PAGE_WIDTH / FRACTION_OF_PAGE_FOR_SWIPE;
+        assertEquals(1, mPhysics.computeReleaseTargetPage(PAGE_WIDTH + quarter, 0, PAGE_WIDTH, 1,
+                PAGE_COUNT));
+        assertEquals(2, mPhysics.computeReleaseTargetPage(PAGE_WIDTH + quarter + 1, 0,
+                PAGE_WIDTH, 1, PAGE_COUNT));
+        assertEquals(2, mPhysics.computeReleaseTargetPage(PAGE_WIDTH + quarter + 1, 0,
+                uniformPages(PAGE_COUNT, PAGE_WIDTH), 1));
+    }
+
+    @Test
+    public void flingMovesOnePageRegardlessOfDragDistance() {
+        // Finger moving left (negative velocity) goes to the next page, right to the previous one
+        assertEquals(3, mPhysics.computeReleaseTargetPage(2 * PAGE_WIDTH, -SNAP_VELOCITY - 1,
+                PAGE_WIDTH, 2, PAGE_COUNT));
+        assertEquals(1, mPhysics.computeReleaseTargetPage(2 * PAGE_WIDTH, SNAP_VELOCITY + 1,
+                PAGE_WIDTH, 2, PAGE_COUNT));
+        // Exactly the snap velocity isn't a fling
+        assertEquals(2, mPhysics.computeReleaseTargetPage(2 * PAGE_WIDTH, -SNAP_VELOCITY,
+                PAGE_WIDTH, 2, PAGE_COUNT));
+    }
+
+    @Test
+    public void flingDoesNotLeaveFirstOrLastPage() {
+        assertEquals(0, mPhysics.computeReleaseTargetPage(-10, SNAP_VELOCITY * 3, PAGE_WIDTH, 0,
+                PAGE_COUNT));
+        final int lastOffset = (PAGE_COUNT - 1) * PAGE_WIDTH;
+        assertEquals(PAGE_COUNT - 1, mPhysics.computeReleaseTargetPage(lastOffset + 10,
+                -SNAP_VELOCITY * 3, PAGE_WIDTH, PAGE_COUNT - 1, PAGE_COUNT));
+
+        final PageOffsetIndex pages = uniformPages(PAGE_COUNT, PAGE_WIDTH);
+        assertEquals(PAGE_COUNT - 1, mFlingPhysics.computeFlingTargetPage(lastOffset + 10,
+                -SNAP_VELOCITY * 10, pages, PAGE_COUNT - 1, PAGE_COUNT));
+        assertEquals(0, mFlingPhysics.computeFlingTargetPage(-10, SNAP_VELOCITY * 10, pages, 0,
+                PAGE_COUNT));
+    }
+
+    @Test
+    public void multiPageFlingIsProportionalAndLimited() {
+        final PageOffsetIndex pages = uniformPages(PAGE_COUNT, PAGE_WIDTH);
+        // 2500 px/s projects 781 px, 1.6 pages: rounds to two pages
+        assertEquals(2, mFlingPhysics.computeFlingTargetPage(0, -2500, pages, 0, PAGE_COUNT));
+        assertEquals(1, mFlingPhysics.computeFlingTargetPage(0, -2500, pages, 0, 1));
+        assertEquals(PAGE_COUNT - 3, mFlingPhysics.computeFlingTargetPage(
+                (PAGE_COUNT - 1) * PAGE_WIDTH, 2500, pages, PAGE_COUNT - 1, PAGE_COUNT));
+        // A barely fast enough fling still moves one page
+        assertEquals(1, mFlingPhysics.computeFlingTargetPage(0, -SNAP_VELOCITY - 1, pages, 0,
+                PAGE_COUNT));
+        // Slow releases behave as without multi-page flings
+        assertEquals(0, mFlingPhysics.computeFlingTargetPage(10, 0, pages, 0, PAGE_COUNT));
+        // maxFlingPages 1 is the classic single-page fling
+        for (int velocityX = -5000; velocityX <= 5000; velocityX += 250) {
+            assertEquals(mPhysics.computeReleaseTargetPage(2 * PAGE_WIDTH, velocityX, pages, 2),
+                    mFlingPhysics.computeFlingTargetPage(2 * PAGE_WIDTH, velocityX, pages, 2, 1));
+        }
+    }
+
+    @Test
+    public void circularFlingWrapsPastTheLastPage() {
+        final PageOffsetIndex pages = uniformPages(PAGE_COUNT, PAGE_WIDTH);
+        final int lastOffset = (PAGE_COUNT - 1) * PAGE_WIDTH;
+        assertEquals(PAGE_COUNT, mPhysics.computeCircularReleaseTargetPage(lastOffset,
+                -SNAP_VELOCITY - 1, pages, PAGE_COUNT - 1));
+        assertEquals(-1, mPhysics.computeCircularReleaseTargetPage(0, SNAP_VELOCITY + 1, pages,
+                0));
+        assertEquals(0, PagerPhysics.wrapPage(PAGE_COUNT, PAGE_COUNT));
+        assertEquals(PAGE_COUNT - 1, PagerPhysics.wrapPage(-1, PAGE_COUNT));
+    }
+
+    @Test
+    public void onlyLongFlingsJumpAhead() {
+        final int fling = 2 * SNAP_VELOCITY;
+        // A long fling skips to the page next to its target, in either direction
+        assertEquals(3, mPhysics.computeFlingJumpPage(0, 4, -fling, PAGE_COUNT));
+        assertEquals(1, mPhysics.computeFlingJumpPage(4, 0, fling, PAGE_COUNT));
+        // One page away there is nothing to skip
+        assertEquals(0, mPhysics.computeFlingJumpPage(0, 1, -fling, PAGE_COUNT));
+
+        // Dragged to page 3 and flung back one page from page 0: the snap is animated
+        assertEquals(3, mPhysics.computeFlingJumpPage(3, 1, fling, 1));
+        // Same with multi-page flings, since the target is behind the fling
+        assertEquals(3, mPhysics.computeFlingJumpPage(3, 1, -fling, PAGE_COUNT));
+        assertEquals(0, mPhysics.computeFlingJumpPage(0, 3, fling, PAGE_COUNT));
+
+        // Slow releases settle without jumping
+        assertEquals(0, mPhysics.computeFlingJumpPage(0, 4, -SNAP_VELOCITY, PAGE_COUNT));
+    }
+
+    @Test
+    public void snapIsClampedAndTimedByDistance() {
+        mPhysics.planSnap(PAGE_WIDTH, PAGE_COUNT + 3, PAGE_WIDTH, PAGE_COUNT, -1, mPlan);
+        assertEquals(PAGE_COUNT - 1, mPlan.targetPage);
+        assertEquals((PAGE_COUNT - 2) * PAGE_WIDTH, mPlan.deltaX);
+
+        mPhysics.planSnap(PAGE_WIDTH / 2, -4, PAGE_WIDTH, PAGE_COUNT, -1, mPlan);
+        assertEquals(0, mPlan.targetPage);
+        assertEquals(-PAGE_WIDTH / 2, mPlan.deltaX);
+        assertEquals(FULL_SNAP_DURATION_MILLIS / 2, mPlan.durationMillis);
+
+        mPhysics.planSnap(PAGE_WIDTH, 1, PAGE_WIDTH, PAGE_COUNT, -1, mPlan);
+        assertEquals(0, mPlan.deltaX);
+        assertEquals(0, mPlan.durationMillis);
+
+        mPhysics.planSnap(0, 3, PAGE_WIDTH, PAGE_COUNT, 123, mPlan);
+        assertEquals(123, mPlan.durationMillis);
+    }
+
+    @Test
+    public void releaseStartsAtTheReleaseVelocity() {
+        // 240 px left to go at 2400 px/s with an interpolator starting at twice the linear speed
+        mPhysics.planRelease(PAGE_WIDTH + PAGE_WIDTH / 2, 2, PAGE_WIDTH, PAGE_COUNT, -2400,
+                INTERPOLATOR_INITIAL_SLOPE, mPlan);
+        assertEquals(PAGE_WIDTH / 2, mPlan.deltaX);
+        assertEquals(200, mPlan.durationMillis);
+
+        // Away from the target or without velocity, the snap is timed by distance only
+        mPhysics.planRelease(PAGE_WIDTH + PAGE_WIDTH / 2, 2, PAGE_WIDTH, PAGE_COUNT, 2400,
+                INTERPOLATOR_INITIAL_SLOPE, mPlan);
+        assertEquals(FULL_SNAP_DURATION_MILLIS / 2, mPlan.durationMillis);
+        mPhysics.planRelease(PAGE_WIDTH + PAGE_WIDTH / 2, 2, PAGE_WIDTH, PAGE_COUNT, 0,
+                INTERPOLATOR_INITIAL_SLOPE, mPlan);
+        assertEquals(FULL_SNAP_DURATION_MILLIS / 2, mPlan.durationMillis);
+
+        // A slow release never makes the settle longer than the distance-timed snap
+        mPhysics.planRelease(PAGE_WIDTH + PAGE_WIDTH / 2, 2, PAGE_WIDTH, PAGE_COUNT, -10,
+                INTERPOLATOR_INITIAL_SLOPE, mPlan);
+        assertEquals(FULL_SNAP_DURATION_MILLIS / 2, mPlan.durationMillis);
+    }
+
+    @Test
+    public void snapReplannedAfterWidthChangeKeepsTargetAndProgress() {
+        final PageOffsetIndex pages = uniformPages(PAGE_COUNT, PAGE_WIDTH);
+        mPhysics.planSnap(PAGE_WIDTH + PAGE_WIDTH / 4, 2, pages, -1, mPlan);
+        assertEquals(2, mPlan.targetPage);
+        final int durationBefore = mPlan.durationMillis;
+
+        // Rotation halfway: the scroll position moves with the pages, a quarter into page 1
+        final int newWidth = 800;
+        pages.setUniform(PAGE_COUNT, newWidth);
+        mPhysics.planSnap(newWidth + newWidth / 4, mPlan.targetPage, pages, -1, mPlan);
+        assertEquals(2, mPlan.targetPage);
+        assertEquals(2 * newWidth, mPlan.startX + mPlan.deltaX);
+        assertEquals(durationBefore, mPlan.durationMillis);
+
+        // Pages narrower than before keep the target in range
+        pages.setUniform(PAGE_COUNT, 100);
+        mPhysics.planSnap(PAGE_WIDTH * PAGE_COUNT, 2, pages, -1, mPlan);
+        assertEquals(200, mPlan.startX + mPlan.deltaX);
+        assertTrue(mPlan.durationMillis >= 0);
+    }
+
+    @Test
+    public void dragIsClampedAtBothEdges() {
+        assertEquals(0, PagerPhysics.clampDragDelta(0, -30, PAGE_WIDTH, PAGE_COUNT));
+        assertEquals(-10, PagerPhysics.clampDragDelta(10, -30, PAGE_WIDTH, PAGE_COUNT));
+        assertEquals(30, PagerPhysics.clampDragDelta(0, 30, PAGE_WIDTH, PAGE_COUNT));
+
+        final int lastOffset = (PAGE_COUNT - 1) * PAGE_WIDTH;
+        assertEquals(0, PagerPhysics.clampDragDelta(lastOffset, 30, PAGE_WIDTH, PAGE_COUNT));
+        assertEquals(5, PagerPhysics.clampDragDelta(lastOffset - 5, 30, PAGE_WIDTH, PAGE_COUNT));
+        assertEquals(-30, PagerPhysics.clampDragDelta(lastOffset, -30, PAGE_WIDTH, PAGE_COUNT));
+        assertEquals(0, PagerPhysics.clampDragDelta(PAGE_WIDTH, 0, PAGE_WIDTH, PAGE_COUNT));
+
+        // A single page can't be dragged at all
+        assertEquals(0, PagerPhysics.clampDragDelta(0, 30, PAGE_WIDTH, 1));
+        assertEquals(0, PagerPhysics.clampDragDelta(0, -30, PAGE_WIDTH, 1));
+
+        final PageOffsetIndex pages = new PageOffsetIndex();
+        pages.setWidths(new int[] { 300, 480, 200 }, 3);
+        assertEquals(10, PagerPhysics.clampDragDelta(770, 30, pages));
+        assertEquals(0, PagerPhysics.clampDragDelta(780, 30, pages));
+    }
+}